@@ -0,0 +1,126 @@
+package com.dlb.giftcards.service;
+
+import com.dlb.giftcards.dto.BarcodeDtos;
+import com.dlb.giftcards.repository.BarcodeVariantStatRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end decode latency per synthetic image. The {@link Outcome} counters end up next to the
+ * timings in the JSON result, so a faster run that decodes fewer images is easy to spot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class BarcodeDecodeBenchmark {
+
+    @Param({"CLEAN", "ROTATION", "BLUR", "NOISE", "PERSPECTIVE", "LOW_CONTRAST"})
+    public SyntheticCode128Corpus.Degradation degradation;
+
+    private BarcodeDecodeService service;
+    private byte[] image;
+    private ImageIngest.Header header;
+    private String expected;
+
+    /** Decoded vs. missed per iteration; success rate = decoded / (decoded + missed). */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcome {
+        public long decoded;
+        public long missed;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            decoded = 0;
+            missed = 0;
+        }
+
+        void record(String text, String expected) {
+            if (text != null && text.equals(expected)) decoded++;
+            else missed++;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        if (!BarcodeDecodeService.tryLoadOpenCv()) throw new IllegalStateException("OpenCV natives not available");
+        service = newService();
+        image = SyntheticCode128Corpus.jpeg(degradation);
+        header = ImageIngest.header(image);
+        expected = SyntheticCode128Corpus.expectedText(degradation);
+    }
+
+    /** Public entry point: OpenCV pipeline with Java2D fallback, no result cache. */
+    @Benchmark
+    public Object decode(Outcome outcome) {
+        try {
+            BarcodeDtos.DecodeBarcodeResponse resp = service.decodeCode128(image, false);
+            outcome.record(resp.rawText, expected);
+            return resp;
+        } catch (IllegalArgumentException e) {
+            outcome.record(null, expected);
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object openCv(Outcome outcome) {
+        try {
+            String text = service.decodeWithOpenCv(BarcodeDecodeService.newCode128Reader(), image, header, newRun());
+            outcome.record(text, expected);
+            return text;
+        } catch (Exception e) {
+            outcome.record(null, expected);
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object java2D(Outcome outcome) {
+        try {
+            String text = service.decodeWithJava2D(BarcodeDecodeService.newCode128Reader(), image, header, newRun());
+            outcome.record(text, expected);
+            return text;
+        } catch (IllegalArgumentException e) {
+            outcome.record(null, expected);
+            return e;
+        }
+    }
+
+    private BarcodeDecodeService.DecodeRun newRun() {
+        return new BarcodeDecodeService.DecodeRun(false, new BarcodeDtos.DecodeBarcodeResponse(),
+                service.newBudget(BarcodeDecodeService.DecodeLimits.DEFAULT), false);
+    }
+
+    /**
+     * Service wired like production defaults, minus Spring: frozen variant stats (so ordering does not
+     * drift between iterations), disabled result cache, sequential sweep.
+     */
+    static BarcodeDecodeService newService() {
+        BarcodeVariantStatRepository repo = (BarcodeVariantStatRepository) Proxy.newProxyInstance(
+                BarcodeDecodeBenchmark.class.getClassLoader(),
+                new Class<?>[]{BarcodeVariantStatRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findAll" -> List.of();
+                    case "save" -> args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "BarcodeVariantStatRepository(stub)";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+        BarcodeVariantStatsService stats = new BarcodeVariantStatsService(repo, true, 0);
+        BarcodeDecodeCache cache = new BarcodeDecodeCache(new ObjectMapper(), 0, 0, 0, "");
+        NativeMatPool pool = new NativeMatPool(1L << 30, 256L << 20);
+        return new BarcodeDecodeService(stats, cache, pool, new BarcodeDecodeMetrics(new SimpleMeterRegistry()),
+                new DecodeBulkhead(4, 1L << 30, 16, 2000),
+                1, 3, 10_000, 30_000, 1000, 2000, false, 12, true);
+    }
+}
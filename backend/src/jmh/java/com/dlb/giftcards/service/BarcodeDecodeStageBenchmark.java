@@ -0,0 +1,119 @@
+package com.dlb.giftcards.service;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import org.openjdk.jmh.annotations.*;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Individual pipeline stages, so a change in end-to-end latency can be traced to the step that moved.
+ * Single attempts use the first grid variant (full crop, no rotation, scale 1.0) of the gray base.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class BarcodeDecodeStageBenchmark {
+
+    @Param({"CLEAN", "ROTATION", "BLUR", "NOISE", "PERSPECTIVE", "LOW_CONTRAST"})
+    public SyntheticCode128Corpus.Degradation degradation;
+
+    private final NativeMatPool pool = new NativeMatPool(1L << 30, 256L << 20);
+    private final MultiFormatReader reader = BarcodeDecodeService.newCode128Reader();
+
+    private byte[] image;
+    private String expected;
+    private Mat bgr;
+    private NativeMatPool.Arena arena;
+    private List<BarcodeDecodeService.MatVariant> matBases;
+    private BufferedImage buffered;
+    private BarcodeDecodeService.PlaneVariant grayPlane;
+
+    @Setup
+    public void setUp() throws IOException {
+        if (!BarcodeDecodeService.tryLoadOpenCv()) throw new IllegalStateException("OpenCV natives not available");
+        image = SyntheticCode128Corpus.jpeg(degradation);
+        expected = SyntheticCode128Corpus.expectedText(degradation);
+        bgr = imdecodeMat(image);
+        arena = pool.openArena(0);
+        matBases = BarcodeDecodeService.buildOpenCvBaseVariants(bgr, arena);
+        buffered = ImageIO.read(new ByteArrayInputStream(image));
+        grayPlane = BarcodeDecodeService.buildJava2DBaseVariants(buffered).get(1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        arena.close();
+        bgr.release();
+    }
+
+    @Benchmark
+    public int imdecode() {
+        Mat m = imdecodeMat(image);
+        int rows = m.rows();
+        m.release();
+        return rows;
+    }
+
+    @Benchmark
+    public int openCvBases() {
+        try (NativeMatPool.Arena a = pool.openArena(0)) {
+            return BarcodeDecodeService.buildOpenCvBaseVariants(bgr, a).size();
+        }
+    }
+
+    @Benchmark
+    public Object localize() {
+        return BarcodeLocalizer.locate(matBases.get(1).mat(), 3, arena);
+    }
+
+    @Benchmark
+    public Object matAttempt(BarcodeDecodeBenchmark.Outcome outcome) {
+        Mat v = BarcodeDecodeService.transformMat(matBases.get(1).mat(), BarcodeDecodeService.CROPS[0], 0, 1.0, arena);
+        try {
+            String text = BarcodeDecodeService.decodeLuminance(reader, BarcodeDecodeService.matToLuminance(v, arena));
+            outcome.record(text, expected);
+            return text;
+        } finally {
+            arena.giveBack(v);
+        }
+    }
+
+    @Benchmark
+    public Object imageIoRead() throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(image));
+    }
+
+    @Benchmark
+    public Object java2DBases() {
+        return BarcodeDecodeService.buildJava2DBaseVariants(buffered);
+    }
+
+    @Benchmark
+    public Object planeAttempt(BarcodeDecodeBenchmark.Outcome outcome) {
+        LuminanceSource v = BarcodeDecodeService.transformPlane(grayPlane, BarcodeDecodeService.CROPS[0], 0, 1.0);
+        String text = BarcodeDecodeService.decodeLuminance(reader, v);
+        outcome.record(text, expected);
+        return text;
+    }
+
+    private static Mat imdecodeMat(byte[] bytes) {
+        MatOfByte encoded = new MatOfByte(bytes);
+        try {
+            return Imgcodecs.imdecode(encoded, Imgcodecs.IMREAD_COLOR);
+        } finally {
+            encoded.release();
+        }
+    }
+}
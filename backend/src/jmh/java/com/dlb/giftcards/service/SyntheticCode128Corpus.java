@@ -0,0 +1,162 @@
+package com.dlb.giftcards.service;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.PerspectiveTransform;
+import com.google.zxing.oned.Code128Writer;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.ConvolveOp;
+import java.awt.image.Kernel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Gift-card-like JPEGs with a Code 128 barcode, rendered in-process so benchmark runs need no fixtures.
+ * Each degradation is deterministic (fixed seed), so two runs decode exactly the same bytes.
+ */
+public final class SyntheticCode128Corpus {
+
+    static final int WIDTH = 1280;
+    static final int HEIGHT = 800;
+
+    public enum Degradation {
+        CLEAN,
+        ROTATION,
+        BLUR,
+        NOISE,
+        PERSPECTIVE,
+        LOW_CONTRAST
+    }
+
+    private SyntheticCode128Corpus() {
+    }
+
+    /** The value encoded in the image for a degradation; digits only, like a card serial. */
+    static String expectedText(Degradation d) {
+        return "60064917" + String.format("%011d", 1_000_003L * (d.ordinal() + 1));
+    }
+
+    static byte[] jpeg(Degradation d) {
+        return encode(render(d));
+    }
+
+    static BufferedImage render(Degradation d) {
+        Random random = new Random(0x5EED + d.ordinal());
+        BufferedImage card = drawCard(expectedText(d), d == Degradation.ROTATION ? 12.0 : 0.0);
+        return switch (d) {
+            case CLEAN, ROTATION -> card;
+            case BLUR -> blur(card, 7);
+            case NOISE -> noise(card, random, 28);
+            case PERSPECTIVE -> perspective(card);
+            case LOW_CONTRAST -> contrast(card, 0.22);
+        };
+    }
+
+    private static BufferedImage drawCard(String text, double angleDeg) {
+        BitMatrix bars = new Code128Writer().encode(text, BarcodeFormat.CODE_128, 720, 150);
+
+        BufferedImage img = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setPaint(new GradientPaint(0, 0, new Color(214, 226, 240), WIDTH, HEIGHT, new Color(168, 190, 214)));
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        g.setColor(new Color(40, 60, 90));
+        g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 56));
+        g.drawString("GIFT CARD", 90, 130);
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 28));
+        g.drawString("Card No. " + text, 90, 190);
+
+        AffineTransform at = new AffineTransform();
+        at.translate(WIDTH / 2.0, HEIGHT * 0.64);
+        at.rotate(Math.toRadians(angleDeg));
+        at.translate(-bars.getWidth() / 2.0, -bars.getHeight() / 2.0);
+        g.setTransform(at);
+        g.setColor(Color.WHITE);
+        g.fillRect(-30, -24, bars.getWidth() + 60, bars.getHeight() + 48);
+        g.setColor(Color.BLACK);
+        for (int y = 0; y < bars.getHeight(); y++) {
+            for (int x = 0; x < bars.getWidth(); x++) {
+                if (bars.get(x, y)) g.fillRect(x, y, 1, 1);
+            }
+        }
+        g.dispose();
+        return img;
+    }
+
+    private static BufferedImage blur(BufferedImage src, int size) {
+        float[] k = new float[size * size];
+        Arrays.fill(k, 1.0f / k.length);
+        return new ConvolveOp(new Kernel(size, size, k), ConvolveOp.EDGE_NO_OP, null).filter(src, null);
+    }
+
+    private static BufferedImage noise(BufferedImage src, Random random, double sigma) {
+        BufferedImage out = new BufferedImage(src.getWidth(), src.getHeight(), BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < src.getHeight(); y++) {
+            for (int x = 0; x < src.getWidth(); x++) {
+                int rgb = src.getRGB(x, y);
+                int n = (int) Math.round(random.nextGaussian() * sigma);
+                out.setRGB(x, y, (clamp(((rgb >> 16) & 0xFF) + n) << 16) | (clamp(((rgb >> 8) & 0xFF) + n) << 8) | clamp((rgb & 0xFF) + n));
+            }
+        }
+        return out;
+    }
+
+    /** Keystone as if photographed from below and to the left; inverse-mapped with nearest sampling. */
+    private static BufferedImage perspective(BufferedImage src) {
+        int w = src.getWidth();
+        int h = src.getHeight();
+        PerspectiveTransform toSource = PerspectiveTransform.quadrilateralToQuadrilateral(
+                0, 0, w, 0, w, h, 0, h,
+                w * 0.08f, h * 0.02f, w * 0.97f, h * 0.10f, w * 0.90f, h * 0.93f, w * 0.02f, h * 0.98f);
+        BufferedImage out = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        float[] p = new float[2 * w];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                p[2 * x] = x + 0.5f;
+                p[2 * x + 1] = y + 0.5f;
+            }
+            toSource.transformPoints(p);
+            for (int x = 0; x < w; x++) {
+                int sx = Math.min(w - 1, Math.max(0, (int) p[2 * x]));
+                int sy = Math.min(h - 1, Math.max(0, (int) p[2 * x + 1]));
+                out.setRGB(x, y, src.getRGB(sx, sy));
+            }
+        }
+        return out;
+    }
+
+    private static BufferedImage contrast(BufferedImage src, double factor) {
+        BufferedImage out = new BufferedImage(src.getWidth(), src.getHeight(), BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < src.getHeight(); y++) {
+            for (int x = 0; x < src.getWidth(); x++) {
+                int rgb = src.getRGB(x, y);
+                int r = clamp((int) Math.round((((rgb >> 16) & 0xFF) - 128) * factor + 140));
+                int gr = clamp((int) Math.round((((rgb >> 8) & 0xFF) - 128) * factor + 140));
+                int b = clamp((int) Math.round(((rgb & 0xFF) - 128) * factor + 140));
+                out.setRGB(x, y, (r << 16) | (gr << 8) | b);
+            }
+        }
+        return out;
+    }
+
+    private static byte[] encode(BufferedImage img) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (!ImageIO.write(img, "jpg", out)) throw new IllegalStateException("No JPEG writer");
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int clamp(int v) {
+        return Math.max(0, Math.min(255, v));
+    }
+}
@@ -46,6 +46,10 @@ public class SecurityConfig {
                 .authorizeHttpRequests(auth -> auth
                         // 健康检查允许带 auth（也可改成 permitAll，但你说要简单登录，这里就统一需要登录）
                         .requestMatchers("/api/**").authenticated()
+                        // Probes are hit by the orchestrator without credentials; they only return a status.
+                        .requestMatchers("/actuator/health/liveness", "/actuator/health/readiness").permitAll()
+                        // Actuator (health, metrics, Prometheus scrape) uses the same Basic Auth user.
+                        .requestMatchers("/actuator/**").authenticated()
                         .anyRequest().denyAll()
                 )
                 // Return plain 401 without WWW-Authenticate to avoid browser credential popup dialogs.
@@ -1,11 +1,16 @@
 package com.dlb.giftcards.controller;
 
 import com.dlb.giftcards.dto.AnycardDtos;
+import com.dlb.giftcards.dto.BarcodeDtos;
 import com.dlb.giftcards.entity.AnycardType;
 import com.dlb.giftcards.entity.GiftCardAnycardEntity;
 import com.dlb.giftcards.service.AnycardService;
+import com.dlb.giftcards.service.BarcodeDecodeService;
+import com.dlb.giftcards.service.ImageUpload;
 import jakarta.validation.Valid;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
 import java.util.List;
 
@@ -14,9 +19,11 @@ import java.util.List;
 public class AnycardController {
 
     private final AnycardService service;
+    private final BarcodeDecodeService barcodeDecodeService;
 
-    public AnycardController(AnycardService service) {
+    public AnycardController(AnycardService service, BarcodeDecodeService barcodeDecodeService) {
         this.service = service;
+        this.barcodeDecodeService = barcodeDecodeService;
     }
 
     @GetMapping
@@ -46,6 +53,36 @@ public class AnycardController {
         return toResp(service.update(id, req.cardNumber, req.serialNumber, req.pin, req.anycardType, req.balance, req.needsRedeem));
     }
 
+    /**
+     * Decodes a card photo and resolves the matching anycard by serial or card number. With apply=true the
+     * scanned serial is attached (to the card named by cardNumber, if given) and needsRedeem is set.
+     * No match is a 200 with card=null unless apply was requested.
+     */
+    @PostMapping(value = "/scan", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public AnycardDtos.ScanResponse scan(
+            @RequestPart("file") MultipartFile file,
+            @RequestParam(name = "anycardType", required = false) String anycardType,
+            @RequestParam(name = "cardNumber", required = false) String cardNumber,
+            @RequestParam(name = "apply", required = false, defaultValue = "false") boolean apply,
+            @RequestParam(name = "needsRedeem", required = false) Boolean needsRedeem,
+            @RequestParam(name = "timeoutMs", required = false) Long timeoutMs,
+            @RequestParam(name = "maxAttempts", required = false) Integer maxAttempts
+    ) {
+        AnycardType t = (anycardType == null || anycardType.isBlank()) ? null : AnycardType.fromString(anycardType);
+        BarcodeDtos.DecodeBarcodeResponse decoded = barcodeDecodeService.decodeCode128(ImageUpload.read(file), false,
+                new BarcodeDecodeService.DecodeLimits(timeoutMs, maxAttempts));
+        AnycardService.ScanResult result = service.scan(decoded.serialNumber, t, cardNumber, apply, needsRedeem);
+
+        AnycardDtos.ScanResponse r = new AnycardDtos.ScanResponse();
+        r.serialNumber = decoded.serialNumber;
+        r.rawText = decoded.rawText;
+        r.cached = decoded.cached;
+        r.matchedBy = result.matchedBy();
+        r.card = result.card() == null ? null : toResp(result.card());
+        r.applied = result.applied();
+        return r;
+    }
+
     @DeleteMapping("/{id}")
     public void delete(@PathVariable("id") String id) {
         service.delete(id);
@@ -1,36 +1,182 @@
 package com.dlb.giftcards.controller;
 
 import com.dlb.giftcards.dto.BarcodeDtos;
+import com.dlb.giftcards.service.BarcodeBatchDecodeService;
+import com.dlb.giftcards.service.BarcodeDecodeCache;
+import com.dlb.giftcards.service.BarcodeDecodeJobService;
 import com.dlb.giftcards.service.BarcodeDecodeService;
+import com.dlb.giftcards.service.BarcodeMultiDecodeService;
+import com.dlb.giftcards.service.BarcodeVariantStatsService;
+import com.dlb.giftcards.service.DecodeBulkhead;
+import com.dlb.giftcards.service.ImageUpload;
+import com.dlb.giftcards.service.NativeMatPool;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/barcode")
 public class BarcodeController {
 
     private final BarcodeDecodeService barcodeDecodeService;
+    private final BarcodeVariantStatsService variantStatsService;
+    private final BarcodeDecodeCache decodeCache;
+    private final BarcodeBatchDecodeService batchDecodeService;
+    private final BarcodeDecodeJobService jobService;
+    private final BarcodeMultiDecodeService multiDecodeService;
+    private final NativeMatPool matPool;
+    private final DecodeBulkhead bulkhead;
+    private final ObjectMapper om;
 
-    public BarcodeController(BarcodeDecodeService barcodeDecodeService) {
+    public BarcodeController(
+            BarcodeDecodeService barcodeDecodeService,
+            BarcodeVariantStatsService variantStatsService,
+            BarcodeDecodeCache decodeCache,
+            BarcodeBatchDecodeService batchDecodeService,
+            BarcodeDecodeJobService jobService,
+            BarcodeMultiDecodeService multiDecodeService,
+            NativeMatPool matPool,
+            DecodeBulkhead bulkhead,
+            ObjectMapper om
+    ) {
         this.barcodeDecodeService = barcodeDecodeService;
+        this.variantStatsService = variantStatsService;
+        this.decodeCache = decodeCache;
+        this.batchDecodeService = batchDecodeService;
+        this.jobService = jobService;
+        this.multiDecodeService = multiDecodeService;
+        this.matPool = matPool;
+        this.bulkhead = bulkhead;
+        this.om = om;
     }
 
+    /**
+     * Decodes one image. With async=true the decode is queued instead: 202 with the job (and a Location to poll),
+     * or 429 with Retry-After when the queue is full. A saturated decoder answers 503 with Retry-After.
+     */
     @PostMapping(value = "/decode/code128", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public BarcodeDtos.DecodeBarcodeResponse decodeCode128(
+    public ResponseEntity<?> decodeCode128(
+            @RequestPart("file") MultipartFile file,
+            @RequestParam(value = "debug", required = false, defaultValue = "false") boolean debug,
+            @RequestParam(value = "timeoutMs", required = false) Long timeoutMs,
+            @RequestParam(value = "maxAttempts", required = false) Integer maxAttempts,
+            @RequestParam(value = "async", required = false, defaultValue = "false") boolean async
+    ) {
+        ImageUpload upload = ImageUpload.read(file);
+        BarcodeDecodeService.DecodeLimits limits = new BarcodeDecodeService.DecodeLimits(timeoutMs, maxAttempts);
+        if (!async) return ResponseEntity.ok(barcodeDecodeService.decodeCode128(upload, debug, limits));
+
+        BarcodeDtos.DecodeJob job = jobService.submit(upload, debug, limits);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/barcode/jobs/" + job.jobId))
+                .body(job);
+    }
+
+    /**
+     * Every distinct barcode on the image (default formats CODE_128, QR_CODE, PDF_417) with its position,
+     * in one sweep over the decode variants. No codes is a 200 with an empty list, not an error.
+     */
+    @PostMapping(value = "/decode/multi", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public BarcodeDtos.MultiDecodeResponse decodeMulti(
             @RequestPart("file") MultipartFile file,
-            @RequestParam(value = "debug", required = false, defaultValue = "false") boolean debug
+            @RequestParam(value = "formats", required = false) List<String> formats,
+            @RequestParam(value = "debug", required = false, defaultValue = "false") boolean debug,
+            @RequestParam(value = "timeoutMs", required = false) Long timeoutMs,
+            @RequestParam(value = "maxAttempts", required = false) Integer maxAttempts
     ) {
-        try {
-            return barcodeDecodeService.decodeCode128(file.getBytes(), debug);
-        } catch (IOException e) {
-            throw new IllegalArgumentException("Failed to read file");
-        }
+        byte[] bytes = ImageUpload.read(file).bytes();
+        return multiDecodeService.decode(bytes, formats, debug, new BarcodeDecodeService.DecodeLimits(timeoutMs, maxAttempts));
+    }
+
+    /** Job state; waitMs > 0 long-polls until the job finishes or the wait runs out. */
+    @GetMapping("/jobs/{jobId}")
+    public DeferredResult<BarcodeDtos.DecodeJob> decodeJob(
+            @PathVariable("jobId") String jobId,
+            @RequestParam(value = "waitMs", required = false) Long waitMs
+    ) {
+        return jobService.await(jobId, waitMs);
+    }
+
+    @GetMapping("/jobs")
+    public BarcodeDtos.DecodeJobStats decodeJobStats() {
+        return jobService.stats();
+    }
+
+    /**
+     * Decodes many images (or the images inside a ZIP) and streams one NDJSON line per image as it finishes.
+     * Lines arrive in completion order; use index/filename to match them to uploads.
+     */
+    @PostMapping(value = "/decode/code128/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> decodeCode128Batch(
+            @RequestPart("files") List<MultipartFile> files,
+            @RequestParam(value = "debug", required = false, defaultValue = "false") boolean debug,
+            @RequestParam(value = "timeoutMs", required = false) Long timeoutMs,
+            @RequestParam(value = "maxAttempts", required = false) Integer maxAttempts
+    ) {
+        List<BarcodeBatchDecodeService.BatchItem> items = batchDecodeService.readItems(files);
+        BarcodeDecodeService.DecodeLimits limits = new BarcodeDecodeService.DecodeLimits(timeoutMs, maxAttempts);
+        StreamingResponseBody body = out -> batchDecodeService.decode(items, debug, limits, item -> {
+            out.write(om.writeValueAsString(item).getBytes(StandardCharsets.UTF_8));
+            out.write('\n');
+            out.flush();
+        });
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .header("X-Batch-Size", String.valueOf(items.size()))
+                .body(body);
+    }
+
+    @GetMapping("/variant-stats")
+    public BarcodeDtos.VariantStatsResponse variantStats() {
+        return variantStatsService.snapshot();
+    }
+
+    @PostMapping("/variant-stats/freeze")
+    public BarcodeDtos.VariantStatsResponse freezeVariantStats() {
+        return variantStatsService.freeze();
+    }
+
+    @PostMapping("/variant-stats/unfreeze")
+    public BarcodeDtos.VariantStatsResponse unfreezeVariantStats() {
+        return variantStatsService.unfreeze();
+    }
+
+    @PostMapping("/variant-stats/reset")
+    public BarcodeDtos.VariantStatsResponse resetVariantStats() {
+        return variantStatsService.reset();
+    }
+
+    @GetMapping("/cache")
+    public BarcodeDtos.DecodeCacheStats cacheStats() {
+        return decodeCache.stats();
+    }
+
+    @PostMapping("/cache/clear")
+    public BarcodeDtos.DecodeCacheStats clearCache() {
+        return decodeCache.clear();
+    }
+
+    @GetMapping("/mat-pool")
+    public BarcodeDtos.MatPoolStats matPoolStats() {
+        return matPool.stats();
+    }
+
+    @GetMapping("/bulkhead")
+    public BarcodeDtos.DecodeBulkheadStats bulkheadStats() {
+        return bulkhead.stats();
     }
 }
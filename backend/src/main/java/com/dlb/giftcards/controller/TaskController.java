@@ -3,6 +3,8 @@ package com.dlb.giftcards.controller;
 import com.dlb.giftcards.dto.TaskDtos;
 import com.dlb.giftcards.entity.AutomationTaskArtifactEntity;
 import com.dlb.giftcards.entity.AutomationTaskEntity;
+import com.dlb.giftcards.service.TaskEventStreamService;
+import com.dlb.giftcards.service.TaskNextWaitService;
 import com.dlb.giftcards.service.TaskService;
 import jakarta.validation.Valid;
 import org.springframework.core.io.FileSystemResource;
@@ -11,6 +13,8 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.nio.file.Files;
@@ -22,9 +26,13 @@ import java.util.List;
 public class TaskController {
 
     private final TaskService service;
+    private final TaskNextWaitService nextWaitService;
+    private final TaskEventStreamService eventStream;
 
-    public TaskController(TaskService service) {
+    public TaskController(TaskService service, TaskNextWaitService nextWaitService, TaskEventStreamService eventStream) {
         this.service = service;
+        this.nextWaitService = nextWaitService;
+        this.eventStream = eventStream;
     }
 
     @PostMapping
@@ -37,6 +45,20 @@ public class TaskController {
         return toResp(service.create(req));
     }
 
+    /**
+     * Server-Sent Events: created, claimed, released, completed, failed and deleted, optionally filtered by
+     * type and status. Resumes after Last-Event-ID (or lastEventId, for clients that cannot set headers).
+     */
+    @GetMapping(path = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter events(
+            @RequestParam(name = "type", required = false) String type,
+            @RequestParam(name = "status", required = false) String status,
+            @RequestParam(name = "lastEventId", required = false) String lastEventIdParam,
+            @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId
+    ) {
+        return eventStream.subscribe(type, status, lastEventId != null ? lastEventId : lastEventIdParam);
+    }
+
     @GetMapping("/{id}")
     public TaskDtos.TaskResponse get(@PathVariable("id") String id) {
         return toResp(service.getOrThrow(id));
@@ -52,11 +74,27 @@ public class TaskController {
         service.deleteTask(id);
     }
 
+    /**
+     * Claims the oldest READY task of the type; each task goes to exactly one caller. 204 when there is none,
+     * or, with waitMs, once nothing has turned up within the wait (long-poll).
+     */
     @GetMapping("/next")
-    public ResponseEntity<TaskDtos.TaskResponse> next(@RequestParam(name = "type", required = false) String type) {
-        return service.next(type)
+    public DeferredResult<ResponseEntity<TaskDtos.TaskResponse>> next(
+            @RequestParam(name = "type", required = false) String type,
+            @RequestParam(name = "workerId", required = false) String workerId,
+            @RequestParam(name = "waitMs", required = false) Long waitMs
+    ) {
+        return nextWaitService.awaitNext(type, workerId, waitMs, found -> found
                 .map(t -> ResponseEntity.ok(toResp(t)))
-                .orElseGet(() -> ResponseEntity.status(204).build());
+                .orElseGet(() -> ResponseEntity.status(204).build()));
+    }
+
+    @PostMapping("/{id}/release")
+    public TaskDtos.TaskResponse release(
+            @PathVariable("id") String id,
+            @RequestBody(required = false) TaskDtos.ReleaseTaskRequest req
+    ) {
+        return toResp(service.release(id, req == null ? null : req.claimToken));
     }
 
     @PostMapping("/{id}/complete")
@@ -116,6 +154,9 @@ public class TaskController {
         r.lastError = e.getLastError();
         r.createdAt = e.getCreatedAt();
         r.updatedAt = e.getUpdatedAt();
+        r.claimToken = e.getClaimToken();
+        r.workerId = e.getWorkerId();
+        r.claimedAt = e.getClaimedAt();
         return r;
     }
 
@@ -129,6 +170,10 @@ public class TaskController {
         r.sha256 = a.getSha256();
         r.createdAt = a.getCreatedAt();
         r.downloadUrl = "/api/tasks/artifacts/" + a.getId();
+        r.barcodeStatus = a.getBarcodeStatus();
+        r.barcodeText = a.getBarcodeText();
+        r.barcodeError = a.getBarcodeError();
+        r.barcodeDecodedAt = a.getBarcodeDecodedAt();
         return r;
     }
 }
@@ -34,4 +34,16 @@ public class AnycardDtos {
         public Instant createdAt;
         public Instant updatedAt;
     }
+
+    public static class ScanResponse {
+        // Decoded barcode text (see BarcodeDtos.DecodeBarcodeResponse).
+        public String serialNumber;
+        public String rawText;
+        public boolean cached;
+        // serial_number or card_number when the barcode matched a card, card_number_param when the cardNumber
+        // parameter picked it, null when nothing matched.
+        public String matchedBy;
+        public AnycardResponse card;
+        public boolean applied;
+    }
 }
@@ -1,5 +1,6 @@
 package com.dlb.giftcards.dto;
 
+import java.time.Instant;
 import java.util.List;
 
 public class BarcodeDtos {
@@ -8,11 +9,140 @@ public class BarcodeDtos {
         public String rawText;
         public String serialNumber;
         public boolean usedOpenCv;
+        public boolean cached;
 
         // Present only when debug=true.
         public Integer attempts;
         public List<String> tried;
         public String error;
     }
-}
 
+    public static class VariantStatsResponse {
+        public boolean frozen;
+        public long totalWins;
+        public List<VariantStat> ranking;
+    }
+
+    public static class VariantStat {
+        public String variant;
+        public long wins;
+        public Instant lastWinAt;
+    }
+
+    public static class DecodeCacheStats {
+        public int entries;
+        public long bytes;
+        public int maxEntries;
+        public long maxBytes;
+        public long ttlMinutes;
+        public long hits;
+        public long misses;
+        public double hitRate;
+        public long evictions;
+        public long expirations;
+        public String persistFile;
+    }
+
+    // One NDJSON line of a batch decode; result is set when ok, error otherwise.
+    public static class BatchDecodeItem {
+        public int index;
+        public String filename;
+        public boolean ok;
+        public DecodeBarcodeResponse result;
+        public String error;
+        public long elapsedMs;
+    }
+
+    // Native memory held by the OpenCV decode pipeline (bytes are rounded up to pool size classes).
+    public static class MatPoolStats {
+        public long liveBytes;
+        public long idleBytes;
+        public long peakLiveBytes;
+        public long highWaterBytes;
+        public long maxIdleBytes;
+        public int idleBlocks;
+        public int openArenas;
+        public long allocations;
+        public long reuses;
+        public long waits;
+    }
+
+    // Async decode job. status: queued | running | done | failed. result is set when done, error when failed.
+    public static class DecodeJob {
+        public String jobId;
+        public String status;
+        public Instant createdAt;
+        public Long queuedMs;
+        public Long elapsedMs;
+        public DecodeBarcodeResponse result;
+        public String error;
+        // Set when failed because no barcode was found: "exhausted" or "cut_off".
+        public String search;
+    }
+
+    public static class DecodeJobStats {
+        public int queueDepth;
+        public int queueCapacity;
+        public int running;
+        public int workers;
+        public int retainedJobs;
+        public long submitted;
+        public long completed;
+        public long failed;
+        public long rejected;
+        public long avgQueueWaitMs;
+        public long maxQueueWaitMs;
+        public long avgRunMs;
+    }
+
+    public static class DecodeBulkheadStats {
+        public int permits;
+        public int inFlight;
+        public long memoryBudgetBytes;
+        public long inFlightBytes;
+        public long peakInFlightBytes;
+        public int waiting;
+        // Part of waiting: decode jobs, batch items and task artifacts, which wait without a limit.
+        public int backgroundWaiting;
+        public int queueCapacity;
+        public long maxWaitMs;
+        public long admitted;
+        public long waited;
+        public long rejectedQueueFull;
+        public long rejectedTimeout;
+        public long avgWaitMs;
+        public long avgHoldMs;
+    }
+
+    // Every distinct code found by /decode/multi. search: "complete" (every requested format seen),
+    // "exhausted" (all variants tried) or "cut_off" (time/attempt budget ran out).
+    public static class MultiDecodeResponse {
+        public List<DecodedCode> codes;
+        public List<String> formats;
+        public String search;
+        public boolean usedOpenCv;
+        public int attempts;
+        public long elapsedMs;
+        public List<String> tried;
+        public String error;
+    }
+
+    // box and points are in pixels of the uploaded image; 1D codes report the two ends of the scan line.
+    public static class DecodedCode {
+        public String format;
+        public String rawText;
+        // Digits of a CODE_128 payload, the same normalization as /decode/code128; null otherwise.
+        public String serialNumber;
+        public String variant;
+        public int hits;
+        public CodeBox box;
+        public List<float[]> points;
+    }
+
+    public static class CodeBox {
+        public int x;
+        public int y;
+        public int width;
+        public int height;
+    }
+}
@@ -21,6 +21,9 @@ public class TaskDtos {
     public static class CompleteTaskRequest {
         @NotNull
         public JsonNode result;
+
+        // Optional: the claimToken from /next; when set, it must match the task's current claim.
+        public String claimToken;
     }
 
     public static class FailTaskRequest {
@@ -28,6 +31,14 @@ public class TaskDtos {
         public String error;
 
         public JsonNode result;
+
+        // Optional: the claimToken from /next; when set, it must match the task's current claim.
+        public String claimToken;
+    }
+
+    public static class ReleaseTaskRequest {
+        // Optional: only release the task if it is still held under this claim.
+        public String claimToken;
     }
 
     public static class TaskResponse {
@@ -39,6 +50,9 @@ public class TaskDtos {
         public String lastError;
         public Instant createdAt;
         public Instant updatedAt;
+        public String claimToken;
+        public String workerId;
+        public Instant claimedAt;
     }
 
     public static class ArtifactResponse {
@@ -50,5 +64,11 @@ public class TaskDtos {
         public String sha256;
         public Instant createdAt;
         public String downloadUrl;
+
+        // Background barcode decode: queued, decoded, not_found, failed or skipped; null when not queued.
+        public String barcodeStatus;
+        public String barcodeText;
+        public String barcodeError;
+        public Instant barcodeDecodedAt;
     }
 }
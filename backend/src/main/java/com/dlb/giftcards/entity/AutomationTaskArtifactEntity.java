@@ -34,6 +34,19 @@ public class AutomationTaskArtifactEntity {
     @Column(name = "created_at", nullable = false)
     private Instant createdAt;
 
+    // Background barcode decode (APP_TASK_ARTIFACT_DECODE_ENABLED); all null when the artifact was never queued.
+    @Column(name = "barcode_status", length = 16)
+    private String barcodeStatus;
+
+    @Column(name = "barcode_text")
+    private String barcodeText;
+
+    @Column(name = "barcode_error")
+    private String barcodeError;
+
+    @Column(name = "barcode_decoded_at")
+    private Instant barcodeDecodedAt;
+
     @PrePersist
     void prePersist() {
         if (this.id == null) this.id = UUID.randomUUID().toString();
@@ -63,5 +76,17 @@ public class AutomationTaskArtifactEntity {
 
     public Instant getCreatedAt() { return createdAt; }
     public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+
+    public String getBarcodeStatus() { return barcodeStatus; }
+    public void setBarcodeStatus(String barcodeStatus) { this.barcodeStatus = barcodeStatus; }
+
+    public String getBarcodeText() { return barcodeText; }
+    public void setBarcodeText(String barcodeText) { this.barcodeText = barcodeText; }
+
+    public String getBarcodeError() { return barcodeError; }
+    public void setBarcodeError(String barcodeError) { this.barcodeError = barcodeError; }
+
+    public Instant getBarcodeDecodedAt() { return barcodeDecodedAt; }
+    public void setBarcodeDecodedAt(Instant barcodeDecodedAt) { this.barcodeDecodedAt = barcodeDecodedAt; }
 }
 
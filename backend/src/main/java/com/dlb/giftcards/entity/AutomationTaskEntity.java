@@ -38,6 +38,21 @@ public class AutomationTaskEntity {
     @Column(name = "updated_at", nullable = false)
     private Instant updatedAt;
 
+    // Bumped by every claim (see AutomationTaskRepository#claim). Not a JPA @Version: rows created before the
+    // column existed hold null, which the claim query reads as 0.
+    @Column(name = "version")
+    private Long version;
+
+    // Set when a worker claims the task through /api/tasks/next.
+    @Column(name = "claim_token", length = 36)
+    private String claimToken;
+
+    @Column(name = "worker_id")
+    private String workerId;
+
+    @Column(name = "claimed_at")
+    private Instant claimedAt;
+
     @PrePersist
     void prePersist() {
         if (this.id == null) this.id = UUID.randomUUID().toString();
@@ -73,4 +88,15 @@ public class AutomationTaskEntity {
 
     public Instant getCreatedAt() { return createdAt; }
     public Instant getUpdatedAt() { return updatedAt; }
+
+    public Long getVersion() { return version; }
+
+    public String getClaimToken() { return claimToken; }
+    public void setClaimToken(String claimToken) { this.claimToken = claimToken; }
+
+    public String getWorkerId() { return workerId; }
+    public void setWorkerId(String workerId) { this.workerId = workerId; }
+
+    public Instant getClaimedAt() { return claimedAt; }
+    public void setClaimedAt(Instant claimedAt) { this.claimedAt = claimedAt; }
 }
@@ -0,0 +1,30 @@
+package com.dlb.giftcards.entity;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "barcode_variant_stat")
+public class BarcodeVariantStatEntity {
+
+    // base|crop|rot|scale, as built by BarcodeDecodeService (no pixel dimensions).
+    @Id
+    @Column(name = "variant_key", length = 128)
+    private String variantKey;
+
+    @Column(name = "wins", nullable = false)
+    private long wins;
+
+    @Column(name = "last_win_at")
+    private Instant lastWinAt;
+
+    public String getVariantKey() { return variantKey; }
+    public void setVariantKey(String variantKey) { this.variantKey = variantKey; }
+
+    public long getWins() { return wins; }
+    public void setWins(long wins) { this.wins = wins; }
+
+    public Instant getLastWinAt() { return lastWinAt; }
+    public void setLastWinAt(Instant lastWinAt) { this.lastWinAt = lastWinAt; }
+}
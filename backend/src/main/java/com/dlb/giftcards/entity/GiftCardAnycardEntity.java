@@ -6,7 +6,11 @@ import java.time.Instant;
 import java.util.UUID;
 
 @Entity
-@Table(name = "giftcard_anycard")
+@Table(name = "giftcard_anycard", indexes = {
+        // Scan lookups (POST /api/anycards/scan) resolve a decoded barcode by either column.
+        @Index(name = "idx_giftcard_anycard_serial_number", columnList = "serial_number"),
+        @Index(name = "idx_giftcard_anycard_card_number", columnList = "card_number")
+})
 public class GiftCardAnycardEntity {
 
     @Id
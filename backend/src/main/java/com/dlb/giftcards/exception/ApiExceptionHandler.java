@@ -1,6 +1,8 @@
 package com.dlb.giftcards.exception;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
@@ -17,6 +19,40 @@ public class ApiExceptionHandler {
         );
     }
 
+    @ExceptionHandler(BarcodeNotFoundException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public Map<String, Object> barcodeNotFound(BarcodeNotFoundException ex) {
+        return Map.of(
+                "error", "bad_request",
+                "message", ex.getMessage(),
+                "search", ex.getSearch(),
+                "attempts", ex.getAttempts(),
+                "elapsedMs", ex.getElapsedMs()
+        );
+    }
+
+    @ExceptionHandler(DecodeQueueFullException.class)
+    public ResponseEntity<Map<String, Object>> decodeQueueFull(DecodeQueueFullException ex) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(Map.of(
+                        "error", "too_many_requests",
+                        "message", ex.getMessage(),
+                        "retryAfterSeconds", ex.getRetryAfterSeconds()
+                ));
+    }
+
+    @ExceptionHandler(DecoderBusyException.class)
+    public ResponseEntity<Map<String, Object>> decoderBusy(DecoderBusyException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(Map.of(
+                        "error", "service_unavailable",
+                        "message", ex.getMessage(),
+                        "retryAfterSeconds", ex.getRetryAfterSeconds()
+                ));
+    }
+
     @ExceptionHandler(IllegalStateException.class)
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public Map<String, Object> serverError(IllegalStateException ex) {
@@ -0,0 +1,30 @@
+package com.dlb.giftcards.exception;
+
+/**
+ * No barcode was decoded. {@code search} tells whether every variant was tried ("exhausted")
+ * or the request's time/attempt budget ran out first ("cut_off").
+ */
+public class BarcodeNotFoundException extends IllegalArgumentException {
+
+    public static final String EXHAUSTED = "exhausted";
+    public static final String CUT_OFF = "cut_off";
+
+    private final String search;
+    private final int attempts;
+    private final long elapsedMs;
+
+    public BarcodeNotFoundException(String message, String search, int attempts, long elapsedMs) {
+        super(message);
+        this.search = search;
+        this.attempts = attempts;
+        this.elapsedMs = elapsedMs;
+    }
+
+    public String getSearch() { return search; }
+    public int getAttempts() { return attempts; }
+    public long getElapsedMs() { return elapsedMs; }
+
+    public boolean isCutOff() {
+        return CUT_OFF.equals(search);
+    }
+}
@@ -0,0 +1,16 @@
+package com.dlb.giftcards.exception;
+
+/**
+ * The async decode queue is full. Mapped to 429 with a Retry-After estimated from the current backlog.
+ */
+public class DecodeQueueFullException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public DecodeQueueFullException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() { return retryAfterSeconds; }
+}
@@ -0,0 +1,17 @@
+package com.dlb.giftcards.exception;
+
+/**
+ * The decode bulkhead is saturated (no permit or memory budget within the wait, or its wait queue is full).
+ * Mapped to 503 with a Retry-After estimated from how long decodes currently hold their permits.
+ */
+public class DecoderBusyException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public DecoderBusyException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() { return retryAfterSeconds; }
+}
@@ -7,5 +7,6 @@ import java.util.List;
 
 public interface AutomationTaskArtifactRepository extends JpaRepository<AutomationTaskArtifactEntity, String> {
     List<AutomationTaskArtifactEntity> findByTaskIdOrderByCreatedAtAsc(String taskId);
+    List<AutomationTaskArtifactEntity> findByBarcodeStatusOrderByCreatedAtAsc(String barcodeStatus);
 }
 
@@ -4,7 +4,12 @@ import com.dlb.giftcards.entity.AutomationTaskEntity;
 import com.dlb.giftcards.entity.TaskStatus;
 import com.dlb.giftcards.entity.TaskType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,4 +17,49 @@ public interface AutomationTaskRepository extends JpaRepository<AutomationTaskEn
     Optional<AutomationTaskEntity> findFirstByStatusOrderByCreatedAtAsc(TaskStatus status);
     Optional<AutomationTaskEntity> findFirstByStatusAndTypeOrderByCreatedAtAsc(TaskStatus status, TaskType type);
     List<AutomationTaskEntity> findByType(TaskType type);
+
+    /**
+     * Moves one task from READY to IN_PROGRESS if it is still READY at the version the caller read, recording
+     * the claim. Returns 1 when this caller won the task, 0 when another worker got there first.
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("""
+            update AutomationTaskEntity t
+               set t.status = com.dlb.giftcards.entity.TaskStatus.IN_PROGRESS,
+                   t.version = coalesce(t.version, 0) + 1,
+                   t.claimToken = :claimToken,
+                   t.workerId = :workerId,
+                   t.claimedAt = :now,
+                   t.updatedAt = :now,
+                   t.lastError = null
+             where t.id = :id
+               and t.status = com.dlb.giftcards.entity.TaskStatus.READY
+               and coalesce(t.version, 0) = :version
+            """)
+    int claim(@Param("id") String id,
+              @Param("version") long version,
+              @Param("claimToken") String claimToken,
+              @Param("workerId") String workerId,
+              @Param("now") Instant now);
+
+    /**
+     * Puts a claimed task back to READY, clearing the claim. With a claimToken only that claim is released.
+     * Returns 0 when the task is not IN_PROGRESS (or is held by another claim).
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("""
+            update AutomationTaskEntity t
+               set t.status = com.dlb.giftcards.entity.TaskStatus.READY,
+                   t.version = coalesce(t.version, 0) + 1,
+                   t.claimToken = null,
+                   t.workerId = null,
+                   t.claimedAt = null,
+                   t.updatedAt = :now
+             where t.id = :id
+               and t.status = com.dlb.giftcards.entity.TaskStatus.IN_PROGRESS
+               and (:claimToken is null or t.claimToken = :claimToken)
+            """)
+    int release(@Param("id") String id, @Param("claimToken") String claimToken, @Param("now") Instant now);
 }
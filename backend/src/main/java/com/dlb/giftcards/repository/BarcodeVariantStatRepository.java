@@ -0,0 +1,6 @@
+package com.dlb.giftcards.repository;
+
+import com.dlb.giftcards.entity.BarcodeVariantStatEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface BarcodeVariantStatRepository extends JpaRepository<BarcodeVariantStatEntity, String> {}
@@ -12,4 +12,5 @@ public interface GiftCardAnycardRepository extends JpaRepository<GiftCardAnycard
     List<GiftCardAnycardEntity> findByNeedsRedeemTrue();
     Optional<GiftCardAnycardEntity> findFirstByCardNumber(String cardNumber);
     Optional<GiftCardAnycardEntity> findFirstBySerialNumber(String serialNumber);
+    Optional<GiftCardAnycardEntity> findFirstByAnycardTypeAndSerialNumber(AnycardType anycardType, String serialNumber);
 }
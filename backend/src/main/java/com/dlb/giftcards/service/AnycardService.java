@@ -2,8 +2,10 @@ package com.dlb.giftcards.service;
 
 import com.dlb.giftcards.entity.AnycardType;
 import com.dlb.giftcards.entity.GiftCardAnycardEntity;
+import com.dlb.giftcards.entity.TaskType;
 import com.dlb.giftcards.repository.GiftCardAnycardRepository;
 import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.data.domain.Sort;
@@ -15,9 +17,15 @@ import java.util.Objects;
 public class AnycardService {
 
     private final GiftCardAnycardRepository repo;
+    private final ApplicationEventPublisher events;
 
-    public AnycardService(GiftCardAnycardRepository repo) {
+    /** Outcome of {@link #scan}: the resolved card (or null), how it was found, and whether it was updated. */
+    public record ScanResult(GiftCardAnycardEntity card, String matchedBy, boolean applied) {
+    }
+
+    public AnycardService(GiftCardAnycardRepository repo, ApplicationEventPublisher events) {
         this.repo = repo;
+        this.events = events;
     }
 
     public GiftCardAnycardEntity getOrThrow(String id) {
@@ -60,7 +68,7 @@ public class AnycardService {
         e.setAnycardType(anycardType);
         e.setBalance(balance == null ? null : balance.trim());
         e.setNeedsRedeem(needsRedeem != null && needsRedeem);
-        return repo.save(e);
+        return saveAndSignal(e);
     }
 
     @Transactional
@@ -92,7 +100,64 @@ public class AnycardService {
         e.setAnycardType(nextType);
         e.setBalance(balance == null ? null : balance.trim());
         e.setNeedsRedeem(needsRedeem != null && needsRedeem);
-        return repo.save(e);
+        return saveAndSignal(e);
+    }
+
+    /**
+     * Resolves a scanned barcode to a card through the indexed serial_number / card_number columns: first as a
+     * serial, then as a card number, then via cardNumber (the card the scan should be attached to). With apply,
+     * the serial is written to a card found by cardNumber and needsRedeem is set, in the same transaction as
+     * the lookup. Decode the image before calling; it must not run inside this transaction.
+     */
+    @Transactional
+    public ScanResult scan(String scanned, AnycardType anycardType, String cardNumber, boolean apply, Boolean needsRedeem) {
+        if (scanned == null || scanned.isBlank()) throw new IllegalArgumentException("Scanned barcode is empty");
+        String serial = scanned.trim();
+        String wantedCard = cardNumber == null || cardNumber.isBlank() ? null : cardNumber.trim();
+
+        GiftCardAnycardEntity bySerial = (anycardType == null
+                ? repo.findFirstBySerialNumber(serial)
+                : repo.findFirstByAnycardTypeAndSerialNumber(anycardType, serial)).orElse(null);
+
+        GiftCardAnycardEntity card = bySerial;
+        String matchedBy = bySerial != null ? "serial_number" : null;
+        if (card == null && wantedCard == null) {
+            card = findByCardNumber(anycardType, serial);
+            if (card != null) matchedBy = "card_number";
+        }
+        if (wantedCard != null) {
+            GiftCardAnycardEntity target = findByCardNumber(anycardType, wantedCard);
+            if (target == null) throw new IllegalArgumentException("Anycard not found for cardNumber: " + wantedCard);
+            if (bySerial != null && !bySerial.getId().equals(target.getId())) {
+                throw new IllegalArgumentException("Serial " + serial + " already belongs to anycard " + bySerial.getId());
+            }
+            card = target;
+            if (matchedBy == null) matchedBy = "card_number_param";
+        }
+
+        if (!apply || card == null) {
+            if (apply) throw new IllegalArgumentException("No anycard matches the scanned barcode: " + serial);
+            return new ScanResult(card, matchedBy, false);
+        }
+        // A barcode that matched as a card number is not a serial; only attach it when the card was named explicitly.
+        if (!"card_number".equals(matchedBy)) card.setSerialNumber(serial);
+        card.setNeedsRedeem(needsRedeem == null || needsRedeem);
+        return new ScanResult(saveAndSignal(card), matchedBy, true);
+    }
+
+    private GiftCardAnycardEntity findByCardNumber(AnycardType anycardType, String cardNumber) {
+        return (anycardType == null
+                ? repo.findFirstByCardNumber(cardNumber)
+                : repo.findByAnycardTypeAndCardNumber(anycardType, cardNumber)).orElse(null);
+    }
+
+    /** A card flagged needsRedeem gets its redeem task on the next claim, so it wakes parked /next requests. */
+    private GiftCardAnycardEntity saveAndSignal(GiftCardAnycardEntity e) {
+        GiftCardAnycardEntity saved = repo.save(e);
+        if (Boolean.TRUE.equals(saved.getNeedsRedeem())) {
+            events.publishEvent(new TaskReadyEvent(TaskType.GETMYBONUS_ANYCARD));
+        }
+        return saved;
     }
 
     @Transactional
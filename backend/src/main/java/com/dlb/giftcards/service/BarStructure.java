@@ -0,0 +1,62 @@
+package com.dlb.giftcards.service;
+
+/**
+ * Cheap "is there a 1D barcode here, and which way do its bars run" check on a small grayscale plane.
+ * <p>
+ * The plane is cut into tiles; a tile looks like bars when it has plenty of edge energy and nearly all of
+ * it is along one axis (sum |dx| far above sum |dy| for vertical bars, the reverse for horizontal bars).
+ * Text and artwork have edges in both directions; paper grain and sensor noise are isotropic.
+ */
+final class BarStructure {
+
+    /** Bars run vertically: scanning rows works at rotation 0 or 180. */
+    static final int VERTICAL_BARS = 1;
+    /** Bars run horizontally: the image has to be turned 90 or 270 degrees. */
+    static final int HORIZONTAL_BARS = 2;
+
+    private static final int TILE = 32;
+    // Mean absolute neighbour difference per pixel (gray levels) below which a tile is treated as flat.
+    private static final int MIN_MEAN_GRADIENT = 12;
+    // Dominant axis must carry this many times the energy of the other; about 20 degrees of tilt still passes.
+    private static final int MIN_ANISOTROPY = 3;
+    // A barcode at pyramid-coarse resolution spans many tiles; a single hit is usually an edge of a logo.
+    private static final int MIN_TILES = 2;
+
+    private BarStructure() {
+    }
+
+    /**
+     * Returns a VERTICAL_BARS / HORIZONTAL_BARS bit mask for the region (x, y, w, h) of a gray plane
+     * laid out row-major with the given stride. 0 means nothing bar-like was found.
+     */
+    static int analyze(byte[] plane, int stride, int x, int y, int w, int h) {
+        int vertical = 0;
+        int horizontal = 0;
+        for (int ty = y; ty + TILE <= y + h; ty += TILE) {
+            for (int tx = x; tx + TILE <= x + w; tx += TILE) {
+                long ex = 0;
+                long ey = 0;
+                for (int yy = ty; yy < ty + TILE - 1; yy++) {
+                    int row = yy * stride;
+                    int next = row + stride;
+                    for (int xx = tx; xx < tx + TILE - 1; xx++) {
+                        int v = plane[row + xx] & 0xFF;
+                        ex += Math.abs((plane[row + xx + 1] & 0xFF) - v);
+                        ey += Math.abs((plane[next + xx] & 0xFF) - v);
+                    }
+                }
+                long samples = (long) (TILE - 1) * (TILE - 1);
+                if (ex + ey < 2L * MIN_MEAN_GRADIENT * samples) continue;
+                if (ex >= MIN_ANISOTROPY * ey) vertical++;
+                else if (ey >= MIN_ANISOTROPY * ex) horizontal++;
+            }
+        }
+        return (vertical >= MIN_TILES ? VERTICAL_BARS : 0) | (horizontal >= MIN_TILES ? HORIZONTAL_BARS : 0);
+    }
+
+    /** Whether a grid rotation can bring bars with the given mask upright. */
+    static boolean allows(int mask, int rotationDeg) {
+        int bit = rotationDeg == 90 || rotationDeg == 270 ? HORIZONTAL_BARS : VERTICAL_BARS;
+        return (mask & bit) != 0;
+    }
+}
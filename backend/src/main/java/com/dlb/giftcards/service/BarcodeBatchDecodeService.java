@@ -0,0 +1,180 @@
+package com.dlb.giftcards.service;
+
+import com.dlb.giftcards.dto.BarcodeDtos;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Decodes many uploads at once on a small dedicated pool and hands each result to the caller
+ * as soon as it finishes, so a slow image never holds back the ones behind it.
+ */
+@Service
+public class BarcodeBatchDecodeService {
+
+    // Same ceiling as spring.servlet.multipart.max-file-size, applied to each expanded ZIP entry.
+    private static final long MAX_ITEM_BYTES = 10L * 1024 * 1024;
+
+    public record BatchItem(int index, String filename, byte[] bytes) {
+    }
+
+    @FunctionalInterface
+    public interface ResultSink {
+        void accept(BarcodeDtos.BatchDecodeItem item) throws IOException;
+    }
+
+    private final BarcodeDecodeService decodeService;
+    private final int maxItems;
+    private final ExecutorService executor;
+
+    public BarcodeBatchDecodeService(
+            BarcodeDecodeService decodeService,
+            @Value("${APP_BARCODE_BATCH_CONCURRENCY:2}") int concurrency,
+            @Value("${APP_BARCODE_BATCH_MAX_ITEMS:100}") int maxItems
+    ) {
+        this.decodeService = decodeService;
+        this.maxItems = Math.max(1, maxItems);
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, concurrency), r -> {
+            Thread t = new Thread(r, "barcode-batch-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Reads every upload into a batch item; ZIP archives are expanded into one item per file entry.
+     * Runs on the request thread so nothing depends on the multipart files after the handler returns.
+     */
+    public List<BatchItem> readItems(List<MultipartFile> files) {
+        if (files == null || files.isEmpty()) throw new IllegalArgumentException("files is empty");
+
+        List<BatchItem> items = new ArrayList<>();
+        for (MultipartFile file : files) {
+            String name = file.getOriginalFilename() == null ? "file" : file.getOriginalFilename();
+            try {
+                if (isZip(name, file.getContentType())) {
+                    readZip(file.getInputStream(), items);
+                } else {
+                    addItem(items, name, file.getBytes());
+                }
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Failed to read file: " + name);
+            }
+        }
+        if (items.isEmpty()) throw new IllegalArgumentException("No images in upload");
+        return items;
+    }
+
+    /**
+     * Decodes all items and calls the sink once per item in completion order. Per-item failures
+     * (unsupported image, no barcode) are reported as error lines; only a failing sink aborts the batch.
+     */
+    public void decode(List<BatchItem> items, boolean debug, BarcodeDecodeService.DecodeLimits limits, ResultSink sink) throws IOException {
+        CompletionService<BarcodeDtos.BatchDecodeItem> completion = new ExecutorCompletionService<>(executor);
+        List<Future<BarcodeDtos.BatchDecodeItem>> futures = new ArrayList<>(items.size());
+        for (BatchItem item : items) {
+            futures.add(completion.submit(() -> decodeOne(item, debug, limits)));
+        }
+
+        try {
+            for (int i = 0; i < items.size(); i++) {
+                sink.accept(completion.take().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decoding batch", e);
+        } catch (ExecutionException e) {
+            // decodeOne never throws; this would be a programming error.
+            throw new IllegalStateException("Batch decode failed", e.getCause());
+        } finally {
+            // Client went away (or we failed): drop whatever has not started yet.
+            for (Future<BarcodeDtos.BatchDecodeItem> f : futures) f.cancel(false);
+        }
+    }
+
+    private BarcodeDtos.BatchDecodeItem decodeOne(BatchItem item, boolean debug, BarcodeDecodeService.DecodeLimits limits) {
+        BarcodeDtos.BatchDecodeItem out = new BarcodeDtos.BatchDecodeItem();
+        out.index = item.index();
+        out.filename = item.filename();
+        long start = System.nanoTime();
+        try {
+            // Items already queue on the batch pool; they wait for the bulkhead instead of coming back busy.
+            BarcodeDtos.DecodeBarcodeResponse resp = decodeService.decodeCode128(item.bytes(), debug,
+                    BarcodeDecodeService.DecodeLimits.orDefault(limits).inBackground());
+            out.ok = true;
+            out.result = resp;
+        } catch (Exception e) {
+            out.error = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+        } finally {
+            out.elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        }
+        return out;
+    }
+
+    private void readZip(InputStream in, List<BatchItem> items) throws IOException {
+        try (ZipInputStream zip = new ZipInputStream(in)) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (entry.isDirectory() || isHidden(entry.getName())) continue;
+                addItem(items, entry.getName(), readLimited(zip, entry.getName()));
+            }
+        }
+    }
+
+    private void addItem(List<BatchItem> items, String filename, byte[] bytes) {
+        if (items.size() >= maxItems) {
+            throw new IllegalArgumentException("Too many images in batch (max " + maxItems + ")");
+        }
+        items.add(new BatchItem(items.size(), filename, bytes));
+    }
+
+    private static byte[] readLimited(InputStream in, String name) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        long total = 0;
+        int read;
+        while ((read = in.read(buf)) > 0) {
+            total += read;
+            if (total > MAX_ITEM_BYTES) throw new IllegalArgumentException("ZIP entry too large: " + name);
+            out.write(buf, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static boolean isZip(String filename, String contentType) {
+        if (contentType != null) {
+            String ct = contentType.toLowerCase(Locale.ROOT);
+            if (ct.equals("application/zip") || ct.equals("application/x-zip-compressed")) return true;
+        }
+        return filename.toLowerCase(Locale.ROOT).endsWith(".zip");
+    }
+
+    private static boolean isHidden(String entryName) {
+        // macOS archives carry __MACOSX/._* resource forks next to the real files.
+        String base = entryName.substring(entryName.lastIndexOf('/') + 1);
+        return entryName.startsWith("__MACOSX/") || base.startsWith(".");
+    }
+}
@@ -0,0 +1,225 @@
+package com.dlb.giftcards.service;
+
+import com.dlb.giftcards.dto.BarcodeDtos;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of decode outcomes keyed by the SHA-256 of the uploaded image bytes.
+ * Bounded by entry count and by an estimate of retained bytes; entries expire after a TTL.
+ * Only definitive outcomes are stored: a decoded value, or "no barcode in this image".
+ */
+@Component
+public class BarcodeDecodeCache {
+
+    private static final Logger log = LoggerFactory.getLogger(BarcodeDecodeCache.class);
+
+    // Rough per-entry overhead: map node, entry object, key and field references.
+    private static final long ENTRY_OVERHEAD_BYTES = 160;
+
+    public record Entry(
+            String sha256,
+            String rawText,
+            String serialNumber,
+            boolean usedOpenCv,
+            String notFoundMessage,
+            long storedAtMillis
+    ) {
+        boolean notFound() {
+            return notFoundMessage != null;
+        }
+
+        long sizeBytes() {
+            return ENTRY_OVERHEAD_BYTES + 2L * (len(sha256) + len(rawText) + len(serialNumber) + len(notFoundMessage));
+        }
+
+        private static int len(String s) {
+            return s == null ? 0 : s.length();
+        }
+    }
+
+    private final ObjectMapper om;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long ttlMillis;
+    private final Path persistFile;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    public BarcodeDecodeCache(
+            ObjectMapper om,
+            @Value("${APP_BARCODE_CACHE_MAX_ENTRIES:2000}") int maxEntries,
+            @Value("${APP_BARCODE_CACHE_MAX_BYTES:4194304}") long maxBytes,
+            @Value("${APP_BARCODE_CACHE_TTL_MINUTES:1440}") long ttlMinutes,
+            @Value("${APP_BARCODE_CACHE_FILE:}") String persistFile
+    ) {
+        this.om = om;
+        this.maxEntries = Math.max(0, maxEntries);
+        this.maxBytes = Math.max(0, maxBytes);
+        this.ttlMillis = Duration.ofMinutes(Math.max(0, ttlMinutes)).toMillis();
+        this.persistFile = persistFile == null || persistFile.isBlank() ? null : Path.of(persistFile.trim());
+    }
+
+    public boolean enabled() {
+        return maxEntries > 0 && maxBytes > 0 && ttlMillis > 0;
+    }
+
+    public String key(byte[] imageBytes) {
+        try {
+            return toHex(MessageDigest.getInstance("SHA-256").digest(imageBytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public Entry get(String key) {
+        if (!enabled()) return null;
+        synchronized (entries) {
+            Entry e = entries.get(key);
+            if (e != null && isExpired(e, System.currentTimeMillis())) {
+                remove(key);
+                expirations.incrementAndGet();
+                e = null;
+            }
+            if (e == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return e;
+        }
+    }
+
+    public void putFound(String key, BarcodeDtos.DecodeBarcodeResponse resp) {
+        put(new Entry(key, resp.rawText, resp.serialNumber, resp.usedOpenCv, null, System.currentTimeMillis()));
+    }
+
+    public void putNotFound(String key, boolean usedOpenCv, String message) {
+        put(new Entry(key, null, null, usedOpenCv, message, System.currentTimeMillis()));
+    }
+
+    public BarcodeDtos.DecodeCacheStats stats() {
+        BarcodeDtos.DecodeCacheStats s = new BarcodeDtos.DecodeCacheStats();
+        synchronized (entries) {
+            s.entries = entries.size();
+            s.bytes = bytes;
+        }
+        s.maxEntries = maxEntries;
+        s.maxBytes = maxBytes;
+        s.ttlMinutes = Duration.ofMillis(ttlMillis).toMinutes();
+        s.hits = hits.get();
+        s.misses = misses.get();
+        s.evictions = evictions.get();
+        s.expirations = expirations.get();
+        long lookups = s.hits + s.misses;
+        s.hitRate = lookups == 0 ? 0.0 : (double) s.hits / lookups;
+        s.persistFile = persistFile == null ? null : persistFile.toString();
+        return s;
+    }
+
+    public BarcodeDtos.DecodeCacheStats clear() {
+        synchronized (entries) {
+            entries.clear();
+            bytes = 0;
+        }
+        return stats();
+    }
+
+    @PostConstruct
+    void load() {
+        if (persistFile == null || !enabled() || !Files.isRegularFile(persistFile)) return;
+        try {
+            List<Entry> stored = om.readValue(persistFile.toFile(), new TypeReference<List<Entry>>() {});
+            // Stored oldest-access first, so re-inserting in order restores the LRU order.
+            for (Entry e : stored) {
+                if (e != null && e.sha256() != null) put(e);
+            }
+            log.info("Loaded {} barcode decode cache entries from {}", entries.size(), persistFile);
+        } catch (Exception e) {
+            log.warn("Failed to load barcode decode cache from {}: {}", persistFile, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void save() {
+        if (persistFile == null || !enabled()) return;
+        List<Entry> snapshot;
+        synchronized (entries) {
+            snapshot = new ArrayList<>(entries.values());
+        }
+        long now = System.currentTimeMillis();
+        snapshot.removeIf(e -> isExpired(e, now));
+        try {
+            Path dir = persistFile.toAbsolutePath().getParent();
+            if (dir != null) Files.createDirectories(dir);
+            Path tmp = persistFile.resolveSibling(persistFile.getFileName() + ".tmp");
+            om.writeValue(tmp.toFile(), snapshot);
+            Files.move(tmp, persistFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Saved {} barcode decode cache entries to {}", snapshot.size(), persistFile);
+        } catch (Exception e) {
+            log.warn("Failed to save barcode decode cache to {}: {}", persistFile, e.getMessage());
+        }
+    }
+
+    private void put(Entry e) {
+        if (!enabled() || isExpired(e, System.currentTimeMillis())) return;
+        synchronized (entries) {
+            remove(e.sha256());
+            entries.put(e.sha256(), e);
+            bytes += e.sizeBytes();
+
+            Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+            while ((entries.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+                Entry eldest = it.next().getValue();
+                it.remove();
+                bytes -= eldest.sizeBytes();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private void remove(String key) {
+        Entry old = entries.remove(key);
+        if (old != null) bytes -= old.sizeBytes();
+    }
+
+    private boolean isExpired(Entry e, long nowMillis) {
+        return nowMillis - e.storedAtMillis() > ttlMillis;
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        char[] hex = "0123456789abcdef".toCharArray();
+        for (int i = 0; i < bytes.length; i++) {
+            int v = bytes[i] & 0xFF;
+            out[i * 2] = hex[v >>> 4];
+            out[i * 2 + 1] = hex[v & 0x0F];
+        }
+        return new String(out);
+    }
+}
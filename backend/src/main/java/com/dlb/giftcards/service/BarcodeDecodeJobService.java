@@ -0,0 +1,242 @@
+package com.dlb.giftcards.service;
+
+import com.dlb.giftcards.dto.BarcodeDtos;
+import com.dlb.giftcards.exception.BarcodeNotFoundException;
+import com.dlb.giftcards.exception.DecodeQueueFullException;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Async single-image decodes: the request thread only enqueues, a small dedicated pool does the work,
+ * and clients poll or long-poll the job. The queue is bounded; when it is full the submit is rejected
+ * (429) instead of piling uploads up in memory. Finished jobs are kept for a while, then dropped.
+ */
+@Service
+public class BarcodeDecodeJobService {
+
+    private static final String QUEUED = "queued";
+    private static final String RUNNING = "running";
+    private static final String DONE = "done";
+    private static final String FAILED = "failed";
+
+    // Retry-After guess before any job has finished.
+    private static final long DEFAULT_RUN_MS = 1000;
+    private static final long MAX_RETRY_AFTER_SECONDS = 300;
+
+    private final BarcodeDecodeService decodeService;
+    private final int workers;
+    private final int queueCapacity;
+    private final long ttlMs;
+    private final long maxWaitMs;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong totalQueueWaitMs = new AtomicLong();
+    private final LongAccumulator maxQueueWaitMs = new LongAccumulator(Math::max, 0);
+    private final AtomicLong totalRunMs = new AtomicLong();
+
+    public BarcodeDecodeJobService(
+            BarcodeDecodeService decodeService,
+            @Value("${APP_BARCODE_JOB_CONCURRENCY:2}") int concurrency,
+            @Value("${APP_BARCODE_JOB_QUEUE_CAPACITY:50}") int queueCapacity,
+            @Value("${APP_BARCODE_JOB_TTL_MINUTES:10}") long ttlMinutes,
+            @Value("${APP_BARCODE_JOB_MAX_WAIT_MS:30000}") long maxWaitMs
+    ) {
+        this.decodeService = decodeService;
+        this.workers = Math.max(1, concurrency);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.ttlMs = TimeUnit.MINUTES.toMillis(Math.max(1, ttlMinutes));
+        this.maxWaitMs = Math.max(0, maxWaitMs);
+        AtomicInteger seq = new AtomicInteger();
+        // Fixed size with an ArrayBlockingQueue: the default AbortPolicy is what turns a full queue into a 429.
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(this.queueCapacity), r -> {
+            Thread t = new Thread(r, "barcode-job-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /** Queues a decode and returns the job in its queued state; throws {@link DecodeQueueFullException} when full. */
+    public BarcodeDtos.DecodeJob submit(ImageUpload upload, boolean debug, BarcodeDecodeService.DecodeLimits limits) {
+        purgeExpired();
+
+        Job job = new Job(UUID.randomUUID().toString());
+        jobs.put(job.id, job);
+        try {
+            executor.execute(() -> run(job, upload, debug, limits));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            rejected.incrementAndGet();
+            throw new DecodeQueueFullException("Barcode decode queue is full; try again later", retryAfterSeconds());
+        }
+        submitted.incrementAndGet();
+        return job.view();
+    }
+
+    /**
+     * Current state of a job. With waitMs > 0 the result completes as soon as the job finishes,
+     * or with the still-pending state once the wait (capped by APP_BARCODE_JOB_MAX_WAIT_MS) runs out.
+     */
+    public DeferredResult<BarcodeDtos.DecodeJob> await(String jobId, Long waitMs) {
+        Job job = jobs.get(jobId);
+        if (job == null) throw new IllegalArgumentException("Decode job not found: " + jobId);
+
+        long wait = waitMs == null ? 0 : Math.max(0, Math.min(waitMs, maxWaitMs));
+        DeferredResult<BarcodeDtos.DecodeJob> out = wait > 0 ? new DeferredResult<>(wait) : new DeferredResult<>();
+        synchronized (job) {
+            if (wait == 0 || job.finished()) {
+                out.setResult(job.view());
+                return out;
+            }
+            job.waiters.add(out);
+        }
+        out.onTimeout(() -> out.setResult(job.view()));
+        out.onCompletion(() -> {
+            synchronized (job) {
+                job.waiters.remove(out);
+            }
+        });
+        return out;
+    }
+
+    public BarcodeDtos.DecodeJobStats stats() {
+        purgeExpired();
+        BarcodeDtos.DecodeJobStats s = new BarcodeDtos.DecodeJobStats();
+        s.queueDepth = executor.getQueue().size();
+        s.queueCapacity = queueCapacity;
+        s.running = executor.getActiveCount();
+        s.workers = workers;
+        s.retainedJobs = jobs.size();
+        s.submitted = submitted.get();
+        s.completed = completed.get();
+        s.failed = failed.get();
+        s.rejected = rejected.get();
+        long startedCount = started.get();
+        s.avgQueueWaitMs = startedCount == 0 ? 0 : totalQueueWaitMs.get() / startedCount;
+        s.maxQueueWaitMs = maxQueueWaitMs.get();
+        s.avgRunMs = avgRunMs();
+        return s;
+    }
+
+    private void run(Job job, ImageUpload upload, boolean debug, BarcodeDecodeService.DecodeLimits limits) {
+        long queuedMs;
+        synchronized (job) {
+            job.status = RUNNING;
+            job.startedNanos = System.nanoTime();
+            queuedMs = (job.startedNanos - job.createdNanos) / 1_000_000;
+        }
+        started.incrementAndGet();
+        totalQueueWaitMs.addAndGet(queuedMs);
+        maxQueueWaitMs.accumulate(queuedMs);
+
+        BarcodeDtos.DecodeBarcodeResponse result = null;
+        String error = null;
+        String search = null;
+        try {
+            // Already queued here; waiting for the bulkhead beats failing the job as busy.
+            result = decodeService.decodeCode128(upload, debug, BarcodeDecodeService.DecodeLimits.orDefault(limits).inBackground());
+        } catch (BarcodeNotFoundException e) {
+            error = e.getMessage();
+            search = e.getSearch();
+        } catch (Exception e) {
+            error = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+        }
+
+        List<DeferredResult<BarcodeDtos.DecodeJob>> waiters;
+        BarcodeDtos.DecodeJob view;
+        synchronized (job) {
+            job.finishedNanos = System.nanoTime();
+            job.finishedAtMs = System.currentTimeMillis();
+            job.result = result;
+            job.error = error;
+            job.search = search;
+            job.status = result != null ? DONE : FAILED;
+            totalRunMs.addAndGet((job.finishedNanos - job.startedNanos) / 1_000_000);
+            view = job.view();
+            waiters = new ArrayList<>(job.waiters);
+            job.waiters.clear();
+        }
+        (result != null ? completed : failed).incrementAndGet();
+        for (DeferredResult<BarcodeDtos.DecodeJob> w : waiters) w.setResult(view);
+    }
+
+    private long retryAfterSeconds() {
+        long backlog = executor.getQueue().size() + executor.getActiveCount();
+        long ms = backlog * avgRunMs() / workers;
+        return Math.max(1, Math.min(MAX_RETRY_AFTER_SECONDS, (ms + 999) / 1000));
+    }
+
+    private long avgRunMs() {
+        long finished = completed.get() + failed.get();
+        return finished == 0 ? DEFAULT_RUN_MS : totalRunMs.get() / finished;
+    }
+
+    private void purgeExpired() {
+        long cutoff = System.currentTimeMillis() - ttlMs;
+        jobs.values().removeIf(j -> j.finishedAtMs != 0 && j.finishedAtMs < cutoff);
+    }
+
+    private static final class Job {
+        final String id;
+        final Instant createdAt = Instant.now();
+        final long createdNanos = System.nanoTime();
+        final List<DeferredResult<BarcodeDtos.DecodeJob>> waiters = new ArrayList<>();
+        // Everything below is guarded by the Job monitor, except finishedAtMs which the purge reads lock-free.
+        String status = QUEUED;
+        long startedNanos;
+        long finishedNanos;
+        volatile long finishedAtMs;
+        BarcodeDtos.DecodeBarcodeResponse result;
+        String error;
+        String search;
+
+        Job(String id) {
+            this.id = id;
+        }
+
+        boolean finished() {
+            return finishedAtMs != 0;
+        }
+
+        synchronized BarcodeDtos.DecodeJob view() {
+            BarcodeDtos.DecodeJob v = new BarcodeDtos.DecodeJob();
+            v.jobId = id;
+            v.status = status;
+            v.createdAt = createdAt;
+            long now = System.nanoTime();
+            v.queuedMs = ((startedNanos != 0 ? startedNanos : now) - createdNanos) / 1_000_000;
+            if (startedNanos != 0) v.elapsedMs = ((finishedNanos != 0 ? finishedNanos : now) - startedNanos) / 1_000_000;
+            v.result = result;
+            v.error = error;
+            v.search = search;
+            return v;
+        }
+    }
+}
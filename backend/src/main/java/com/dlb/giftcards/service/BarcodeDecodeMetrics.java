@@ -0,0 +1,128 @@
+package com.dlb.giftcards.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters for the barcode decoder, scraped from /actuator/prometheus:
+ * <ul>
+ *   <li>{@code barcode.decode.requests} timer per request, tagged path (opencv, java2d, cache) and outcome;</li>
+ *   <li>{@code barcode.decode.stage} timer per pipeline step, tagged path and stage;</li>
+ *   <li>{@code barcode.decode.attempts} attempts spent per searched request;</li>
+ *   <li>{@code barcode.decode.wins} counter per winning variant key;</li>
+ *   <li>{@code barcode.decode.failures} counter per failure reason;</li>
+ *   <li>{@code barcode.decode.fallbacks} OpenCV to Java2D fallbacks, tagged reason;</li>
+ *   <li>{@code barcode.decode.row_scan} row-scan fast path runs, tagged path and outcome (win, miss).</li>
+ * </ul>
+ * Both timers publish percentile histograms so p99 can be computed server side (histogram_quantile).
+ * Variant keys come from a fixed grid, so the wins counter stays at a few hundred series at most.
+ */
+@Component
+public class BarcodeDecodeMetrics {
+
+    enum Path {
+        OPENCV, JAVA2D, CACHE;
+
+        final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    enum Stage {
+        IMAGE_DECODE, BASE_VARIANTS, ROW_SCAN, LOCALIZE, RECTIFY, TRANSFORM, LUMINANCE, ZXING;
+
+        final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    private final MeterRegistry registry;
+    private final Map<Path, Map<Stage, Timer>> stages = new EnumMap<>(Path.class);
+    private final DistributionSummary attempts;
+
+    public BarcodeDecodeMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (Path path : new Path[]{Path.OPENCV, Path.JAVA2D}) {
+            Map<Stage, Timer> byStage = new EnumMap<>(Stage.class);
+            for (Stage stage : Stage.values()) {
+                // Localization and rectification only run on the OpenCV path; Java2D attempts produce luminance planes directly.
+                if (path == Path.JAVA2D && (stage == Stage.LOCALIZE || stage == Stage.RECTIFY || stage == Stage.LUMINANCE)) continue;
+                byStage.put(stage, Timer.builder("barcode.decode.stage")
+                        .description("Time spent in one barcode decode pipeline stage")
+                        .tag("path", path.tag)
+                        .tag("stage", stage.tag)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofNanos(50_000))
+                        .maximumExpectedValue(Duration.ofSeconds(10))
+                        .register(registry));
+            }
+            stages.put(path, byStage);
+        }
+        this.attempts = DistributionSummary.builder("barcode.decode.attempts")
+                .description("Decode attempts spent per request that ran a search")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(1.0)
+                .maximumExpectedValue(2000.0)
+                .register(registry);
+    }
+
+    /** Records one stage that started at startNanos (System.nanoTime) and just ended. */
+    void stage(Path path, Stage stage, long startNanos) {
+        stages.get(path).get(stage).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** outcome is "found" or a failure reason (see {@link #failure}). */
+    void request(Path path, String outcome, long startNanos) {
+        Timer.builder("barcode.decode.requests")
+                .description("End-to-end Code 128 decode time per request")
+                .tag("path", path.tag)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(60))
+                .register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void attempts(int used) {
+        attempts.record(used);
+    }
+
+    void win(String variantKey) {
+        Counter.builder("barcode.decode.wins")
+                .description("Decodes won by each variant")
+                .tag("variant", variantKey)
+                .register(registry)
+                .increment();
+    }
+
+    void failure(String reason) {
+        Counter.builder("barcode.decode.failures")
+                .description("Decode requests that ended without a result, by reason")
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+    }
+
+    void rowScan(Path path, boolean won) {
+        Counter.builder("barcode.decode.row_scan")
+                .description("Row-scan fast path runs, and whether they decoded before the variant search")
+                .tag("path", path.tag)
+                .tag("outcome", won ? "win" : "miss")
+                .register(registry)
+                .increment();
+    }
+
+    void fallback(String reason) {
+        Counter.builder("barcode.decode.fallbacks")
+                .description("OpenCV decodes that fell back to the Java2D pipeline")
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+    }
+}
@@ -1,35 +1,243 @@
 package com.dlb.giftcards.service;
 
 import com.dlb.giftcards.dto.BarcodeDtos;
+import com.dlb.giftcards.exception.BarcodeNotFoundException;
+import com.dlb.giftcards.exception.DecoderBusyException;
+import com.dlb.giftcards.service.BarcodeDecodeMetrics.Path;
+import com.dlb.giftcards.service.BarcodeDecodeMetrics.Stage;
 import com.google.zxing.*;
 import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
 import com.google.zxing.common.HybridBinarizer;
+import jakarta.annotation.PreDestroy;
 import nu.pattern.OpenCV;
 import org.opencv.core.*;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
+import java.awt.image.DataBufferByte;
 import java.io.IOException;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Code 128 decoding for gift card photos: an OpenCV pipeline with a Java2D fallback.
+ * Pipeline stages are package-private so the JMH benchmarks (src/jmh/java, "benchmarks" profile) can time them.
+ */
 @Service
 public class BarcodeDecodeService {
 
     private static final AtomicBoolean OPENCV_LOADED = new AtomicBoolean(false);
     private static final AtomicBoolean OPENCV_LOAD_ATTEMPTED = new AtomicBoolean(false);
+    private static volatile String openCvLoadError;
+
+    // Crop rectangles as ratios: full, center-ish, and lower section (common for phone photos).
+    static final Crop[] CROPS = new Crop[]{
+            new Crop("full", 0.0, 0.0, 1.0, 1.0),
+            new Crop("center", 0.1, 0.2, 0.8, 0.6),
+            new Crop("lower", 0.05, 0.45, 0.9, 0.5),
+    };
+    private static final int[] ROTATIONS = new int[]{0, 90, 180, 270};
+    private static final double[] SCALES = new double[]{1.0, 0.85, 0.7, 0.55};
+    // Pyramid mode walks the same scales coarsest first, so variant keys (and learned wins) are shared with the grid.
+    private static final double[] PYRAMID_SCALES = new double[]{0.55, 0.7, 0.85, 1.0};
+    // Cap on the longest side of any attempt image, to keep decode time bounded.
+    private static final int MAX_DIM = 2200;
+
+    // MultiFormatReader keeps per-decode state, so every pool worker gets its own.
+    private static final ThreadLocal<MultiFormatReader> WORKER_READER = ThreadLocal.withInitial(BarcodeDecodeService::newCode128Reader);
+    // Grayscale copy target for OpenCV attempts; one per thread, grown to the largest variant seen.
+    private static final ThreadLocal<byte[]> LUMA_BUFFER = new ThreadLocal<>();
+
+    static final String NOT_FOUND_MESSAGE = "No Code 128 barcode found";
+
+    private final BarcodeVariantStatsService variantStats;
+    private final BarcodeDecodeCache decodeCache;
+    private final NativeMatPool matPool;
+    private final BarcodeDecodeMetrics metrics;
+    private final DecodeBulkhead bulkhead;
+    private final int parallelism;
+    private final ExecutorService decodeExecutor;
+    private final int localizeMaxRegions;
+    private final boolean pyramid;
+    private final int rowScanLines;
+    private final boolean rectify;
+    private final long defaultTimeoutMs;
+    private final long maxTimeoutMs;
+    private final int defaultMaxAttempts;
+    private final int maxAttemptsCap;
+
+    /**
+     * Optional per-request overrides; null fields use the server defaults. Both are capped server-side.
+     * background marks callers that already wait in their own bounded queue (decode jobs, batch items, task
+     * artifacts): they wait for the bulkhead instead of failing fast with 503.
+     */
+    public record DecodeLimits(Long timeoutMs, Integer maxAttempts, boolean background) {
+        public static final DecodeLimits DEFAULT = new DecodeLimits(null, null);
+        public static final DecodeLimits BACKGROUND = DEFAULT.inBackground();
+
+        public DecodeLimits(Long timeoutMs, Integer maxAttempts) {
+            this(timeoutMs, maxAttempts, false);
+        }
+
+        public DecodeLimits inBackground() {
+            return new DecodeLimits(timeoutMs, maxAttempts, true);
+        }
+
+        static DecodeLimits orDefault(DecodeLimits limits) {
+            return limits == null ? DEFAULT : limits;
+        }
+    }
+
+    public BarcodeDecodeService(
+            BarcodeVariantStatsService variantStats,
+            BarcodeDecodeCache decodeCache,
+            NativeMatPool matPool,
+            BarcodeDecodeMetrics metrics,
+            DecodeBulkhead bulkhead,
+            @Value("${APP_BARCODE_DECODE_PARALLELISM:1}") int parallelism,
+            @Value("${APP_BARCODE_LOCALIZE_MAX_REGIONS:3}") int localizeMaxRegions,
+            @Value("${APP_BARCODE_DECODE_TIMEOUT_MS:10000}") long defaultTimeoutMs,
+            @Value("${APP_BARCODE_DECODE_MAX_TIMEOUT_MS:30000}") long maxTimeoutMs,
+            @Value("${APP_BARCODE_DECODE_MAX_ATTEMPTS:1000}") int defaultMaxAttempts,
+            @Value("${APP_BARCODE_DECODE_MAX_ATTEMPTS_CAP:2000}") int maxAttemptsCap,
+            @Value("${APP_BARCODE_PYRAMID_ENABLED:false}") boolean pyramid,
+            @Value("${APP_BARCODE_ROW_SCAN_LINES:12}") int rowScanLines,
+            @Value("${APP_BARCODE_RECTIFY_ENABLED:true}") boolean rectify
+    ) {
+        this.variantStats = variantStats;
+        this.decodeCache = decodeCache;
+        this.matPool = matPool;
+        this.metrics = metrics;
+        this.bulkhead = bulkhead;
+        this.maxTimeoutMs = Math.max(1, maxTimeoutMs);
+        this.defaultTimeoutMs = Math.min(Math.max(1, defaultTimeoutMs), this.maxTimeoutMs);
+        this.maxAttemptsCap = Math.max(1, maxAttemptsCap);
+        this.defaultMaxAttempts = Math.min(Math.max(1, defaultMaxAttempts), this.maxAttemptsCap);
+        // 0 disables the localization stage and goes straight to the crop/rotation/scale grid.
+        this.localizeMaxRegions = Math.max(0, localizeMaxRegions);
+        this.pyramid = pyramid;
+        // 0 disables the row-scan fast path; every request then goes straight to the variant search.
+        this.rowScanLines = Math.max(0, rowScanLines);
+        this.rectify = rectify;
+        this.parallelism = Math.max(1, parallelism);
+        // parallelism=1 keeps the original sequential sweep on the request thread.
+        this.decodeExecutor = this.parallelism > 1 ? newDecodeExecutor(this.parallelism) : null;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (decodeExecutor != null) decodeExecutor.shutdownNow();
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
 
     public BarcodeDtos.DecodeBarcodeResponse decodeCode128(byte[] imageBytes, boolean debug) {
+        return decodeCode128(imageBytes, debug, DecodeLimits.DEFAULT);
+    }
+
+    public BarcodeDtos.DecodeBarcodeResponse decodeCode128(byte[] imageBytes, boolean debug, DecodeLimits limits) {
+        return decodeCode128(imageBytes, null, debug, limits);
+    }
+
+    /** Same as the byte[] variant, reusing the SHA-256 computed while the upload was read as the cache key. */
+    public BarcodeDtos.DecodeBarcodeResponse decodeCode128(ImageUpload upload, boolean debug, DecodeLimits limits) {
+        return decodeCode128(upload.bytes(), upload.sha256(), debug, limits);
+    }
+
+    private BarcodeDtos.DecodeBarcodeResponse decodeCode128(byte[] imageBytes, String sha256, boolean debug, DecodeLimits limits) {
         if (imageBytes == null || imageBytes.length == 0) {
             throw new IllegalArgumentException("file is empty");
         }
+        if (!decodeCache.enabled()) return decodeUncached(imageBytes, debug, limits);
 
+        // Debug callers want the tried list, so they always run the search (but still refresh the cache).
+        long start = System.nanoTime();
+        String key = sha256 != null ? sha256 : decodeCache.key(imageBytes);
+        BarcodeDecodeCache.Entry hit = debug ? null : decodeCache.get(key);
+        if (hit != null) {
+            metrics.request(Path.CACHE, hit.notFound() ? BarcodeNotFoundException.EXHAUSTED : "found", start);
+            if (hit.notFound()) {
+                throw new BarcodeNotFoundException(hit.notFoundMessage(), BarcodeNotFoundException.EXHAUSTED, 0, 0);
+            }
+            BarcodeDtos.DecodeBarcodeResponse resp = new BarcodeDtos.DecodeBarcodeResponse();
+            resp.rawText = hit.rawText();
+            resp.serialNumber = hit.serialNumber();
+            resp.usedOpenCv = hit.usedOpenCv();
+            resp.cached = true;
+            return resp;
+        }
+
+        try {
+            BarcodeDtos.DecodeBarcodeResponse resp = decodeUncached(imageBytes, debug, limits);
+            decodeCache.putFound(key, resp);
+            return resp;
+        } catch (BarcodeNotFoundException e) {
+            // A cut-off search says nothing about the image, so only exhausted searches are remembered.
+            if (!e.isCutOff()) decodeCache.putNotFound(key, OPENCV_LOADED.get(), e.getMessage());
+            throw e;
+        }
+    }
+
+    DecodeBudget newBudget(DecodeLimits limits) {
+        Long timeoutMs = limits == null ? null : limits.timeoutMs();
+        Integer maxAttempts = limits == null ? null : limits.maxAttempts();
+        long t = timeoutMs == null ? defaultTimeoutMs : Math.min(Math.max(1, timeoutMs), maxTimeoutMs);
+        int a = maxAttempts == null ? defaultMaxAttempts : Math.min(Math.max(1, maxAttempts), maxAttemptsCap);
+        return new DecodeBudget(t, a);
+    }
+
+    private BarcodeDtos.DecodeBarcodeResponse decodeUncached(byte[] imageBytes, boolean debug, DecodeLimits limits) {
+        // The bulkhead wait is not part of the decode budget; it has its own short cap (none in the background).
+        // Parsed once here; the memory estimate and both decoders take it from this header.
+        ImageIngest.Header header = ImageIngest.header(imageBytes);
+        DecodeBulkhead.Permit permit;
+        try {
+            long bytes = estimateWorkingBytes(imageBytes, header);
+            permit = DecodeLimits.orDefault(limits).background() ? bulkhead.acquireBackground(bytes) : bulkhead.acquire(bytes);
+        } catch (DecoderBusyException e) {
+            metrics.failure("busy");
+            throw e;
+        }
+        try (permit) {
+            return search(imageBytes, header, debug, limits);
+        }
+    }
+
+    /**
+     * Rough upper bound of what one decode of this upload holds at once: the encoded copy handed to OpenCV,
+     * the decoded BGR image and the six grayscale base planes at working resolution, plus a transformed
+     * attempt (BGR and its luminance plane, at most MAX_DIM square) per decode worker, and the card
+     * rectification planes when that stage is on (see {@link CardRectifier#workingBytes}). The Java2D fallback
+     * builds a comparable set on the heap instead. Unreadable headers assume a MAX_DIM square image and
+     * fail fast in the decoder anyway.
+     */
+    long estimateWorkingBytes(byte[] imageBytes, ImageIngest.Header header) {
+        long pixels;
+        if (!header.known()) {
+            pixels = (long) MAX_DIM * MAX_DIM;
+        } else {
+            int f = header.factor();
+            pixels = (long) ((header.width() + f - 1) / f) * ((header.height() + f - 1) / f);
+        }
+        long attempt = 4L * MAX_DIM * MAX_DIM;
+        long rectification = rectify ? CardRectifier.workingBytes(MAX_DIM) : 0;
+        return imageBytes.length + 9 * pixels + parallelism * attempt + rectification;
+    }
+
+    private BarcodeDtos.DecodeBarcodeResponse search(byte[] imageBytes, ImageIngest.Header header, boolean debug, DecodeLimits limits) {
+        long start = System.nanoTime();
+        DecodeBudget budget = newBudget(limits);
         boolean opencvAvailable = tryLoadOpenCv();
 
         BarcodeDtos.DecodeBarcodeResponse resp = new BarcodeDtos.DecodeBarcodeResponse();
@@ -39,31 +247,76 @@ public class BarcodeDecodeService {
             resp.attempts = 0;
         }
 
+        MultiFormatReader reader = newCode128Reader();
+        DecodeRun run = new DecodeRun(debug, resp, budget, true);
+        BarcodeDecodeMetrics.Path path = Path.OPENCV;
+
+        try {
+            try {
+                if (opencvAvailable) {
+                    String text = decodeWithOpenCv(reader, imageBytes, header, run);
+                    resp.rawText = text;
+                    resp.serialNumber = normalizeDigits(text);
+                    metrics.request(path, "found", start);
+                    return resp;
+                }
+            } catch (DecoderBusyException e) {
+                // Out of native memory admission: Java2D would only hide the overload as "not found".
+                throw e;
+            } catch (NotFoundException e) {
+                // Fall back to Java2D pipeline below.
+                metrics.fallback("not_found");
+                if (debug) resp.error = "opencv_not_found";
+            } catch (Exception e) {
+                // OpenCV path failed unexpectedly; fall back but preserve debug signal.
+                metrics.fallback("error");
+                if (debug) resp.error = "opencv_error:" + e.getClass().getSimpleName();
+            }
+
+            path = Path.JAVA2D;
+            if (budget.expired()) throw notFound(budget);
+
+            String text = decodeWithJava2D(reader, imageBytes, header, run);
+            resp.rawText = text;
+            resp.serialNumber = normalizeDigits(text);
+            metrics.request(path, "found", start);
+            return resp;
+        } catch (RuntimeException e) {
+            String reason = failureReason(e);
+            metrics.failure(reason);
+            metrics.request(path, reason, start);
+            throw e;
+        } finally {
+            metrics.attempts(budget.used());
+        }
+    }
+
+    /** Bounded set of tag values for failed decodes. */
+    private static String failureReason(RuntimeException e) {
+        if (e instanceof BarcodeNotFoundException nf) return nf.getSearch();
+        if (e instanceof DecoderBusyException) return "busy";
+        if (e instanceof IllegalArgumentException) {
+            return "Unsupported image".equals(e.getMessage()) ? "unsupported_image" : "invalid_result";
+        }
+        return "error";
+    }
+
+    static MultiFormatReader newCode128Reader() {
         MultiFormatReader reader = new MultiFormatReader();
         Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
         hints.put(DecodeHintType.POSSIBLE_FORMATS, List.of(BarcodeFormat.CODE_128));
         hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
         reader.setHints(hints);
+        return reader;
+    }
 
-        try {
-            if (opencvAvailable) {
-                String text = decodeWithOpenCv(reader, imageBytes, debug, resp);
-                resp.rawText = text;
-                resp.serialNumber = normalizeDigits(text);
-                return resp;
-            }
-        } catch (NotFoundException e) {
-            // Fall back to Java2D pipeline below.
-            if (debug) resp.error = "opencv_not_found";
-        } catch (Exception e) {
-            // OpenCV path failed unexpectedly; fall back but preserve debug signal.
-            if (debug) resp.error = "opencv_error:" + e.getClass().getSimpleName();
-        }
-
-        String text = decodeWithJava2D(reader, imageBytes, debug, resp);
-        resp.rawText = text;
-        resp.serialNumber = normalizeDigits(text);
-        return resp;
+    private static ExecutorService newDecodeExecutor(int threads) {
+        AtomicInteger seq = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "barcode-decode-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
     }
 
     private static String normalizeDigits(String rawText) {
@@ -75,7 +328,8 @@ public class BarcodeDecodeService {
         return digits;
     }
 
-    private static boolean tryLoadOpenCv() {
+    // Synchronized so concurrent first requests wait for the load instead of seeing "attempted, not loaded".
+    static synchronized boolean tryLoadOpenCv() {
         if (OPENCV_LOADED.get()) return true;
         if (OPENCV_LOAD_ATTEMPTED.getAndSet(true)) return false;
         try {
@@ -83,64 +337,101 @@ public class BarcodeDecodeService {
             OPENCV_LOADED.set(true);
             return true;
         } catch (Throwable t) {
+            openCvLoadError = t.toString();
             return false;
         }
     }
 
-    private static String decodeWithOpenCv(MultiFormatReader reader, byte[] imageBytes, boolean debug, BarcodeDtos.DecodeBarcodeResponse resp)
+    static boolean openCvLoaded() {
+        return OPENCV_LOADED.get();
+    }
+
+    /** Why the native load failed, or null if it succeeded or was never attempted. */
+    static String openCvLoadError() {
+        return openCvLoadError;
+    }
+
+    String decodeWithOpenCv(MultiFormatReader reader, byte[] imageBytes, ImageIngest.Header header, DecodeRun run)
             throws IOException, NotFoundException {
-        Mat mat = Imgcodecs.imdecode(new MatOfByte(imageBytes), Imgcodecs.IMREAD_COLOR);
+        // Large photos are decoded at reduced size; attempts never use more than MAX_DIM anyway.
+        long t = System.nanoTime();
+        Mat mat = ImageIngest.imdecode(imageBytes, header.factor());
+        metrics.stage(Path.OPENCV, Stage.IMAGE_DECODE, t);
         if (mat.empty()) {
             mat.release();
             throw new IllegalArgumentException("Unsupported image");
         }
 
-        List<MatVariant> bases = buildOpenCvBaseVariants(mat);
-        try {
-            for (MatVariant base : bases) {
-                String text = tryDecodeMatVariants(reader, base, debug, resp);
+        // Every intermediate below is borrowed from the pool and handed back when the arena closes.
+        try (NativeMatPool.Arena arena = matPool.openArena(run.budget.remainingMs())) {
+            t = System.nanoTime();
+            List<MatVariant> bases = buildOpenCvBaseVariants(mat, arena);
+            metrics.stage(Path.OPENCV, Stage.BASE_VARIANTS, t);
+
+            // The scan is one attempt of the budget, claimed before the luminance copy is even built.
+            if (rowScanLines > 0 && run.budget.tryAcquire()) {
+                String text = rowScan(Path.OPENCV, matToLuminance(bases.get(1).mat(), arena), run);
                 if (text != null) return text;
             }
-        } finally {
-            // Release all derived mats (but not the shared original twice).
-            for (int i = 1; i < bases.size(); i++) {
-                try {
-                    bases.get(i).mat.release();
-                } catch (Exception ignored) {
+
+            // Localized, deskewed regions first; the blind grid only runs when none of them decode.
+            if (localizeMaxRegions > 0) {
+                String text = runAttempts(reader, localizedAttempts(bases, arena), run);
+                if (text != null) return text;
+            }
+
+            // One perspective-corrected, deskewed copy of the whole card before the blind rotations.
+            if (rectify) {
+                String text = runAttempts(reader, rectifiedAttempts(bases.get(1), arena), run);
+                if (text != null) return text;
+            }
+
+            String text;
+            if (pyramid) {
+                text = runMatPyramid(reader, bases, run, arena);
+            } else {
+                List<Attempt> attempts = new ArrayList<>();
+                for (MatVariant base : bases) {
+                    addMatAttempts(attempts, base, arena);
                 }
+                text = runAttempts(reader, attempts, run);
             }
+            if (text != null) return text;
+        } finally {
             mat.release();
         }
         throw NotFoundException.getNotFoundInstance();
     }
 
-    private static List<MatVariant> buildOpenCvBaseVariants(Mat srcBgr) {
+    static List<MatVariant> buildOpenCvBaseVariants(Mat srcBgr, NativeMatPool.Arena arena) {
+        int rows = srcBgr.rows();
+        int cols = srcBgr.cols();
         List<MatVariant> out = new ArrayList<>();
         out.add(new MatVariant("bgr", srcBgr));
 
-        Mat gray = new Mat();
+        Mat gray = arena.borrow(rows, cols, CvType.CV_8UC1);
         Imgproc.cvtColor(srcBgr, gray, Imgproc.COLOR_BGR2GRAY);
         out.add(new MatVariant("gray", gray));
 
-        Mat blur = new Mat();
+        Mat blur = arena.borrow(rows, cols, CvType.CV_8UC1);
         Imgproc.GaussianBlur(gray, blur, new Size(3, 3), 0);
         out.add(new MatVariant("blur", blur));
 
-        Mat binOtsu = new Mat();
+        Mat binOtsu = arena.borrow(rows, cols, CvType.CV_8UC1);
         Imgproc.threshold(blur, binOtsu, 0, 255, Imgproc.THRESH_BINARY | Imgproc.THRESH_OTSU);
         out.add(new MatVariant("bin_otsu", binOtsu));
 
-        Mat binInvOtsu = new Mat();
+        Mat binInvOtsu = arena.borrow(rows, cols, CvType.CV_8UC1);
         Imgproc.threshold(blur, binInvOtsu, 0, 255, Imgproc.THRESH_BINARY_INV | Imgproc.THRESH_OTSU);
         out.add(new MatVariant("bin_inv_otsu", binInvOtsu));
 
         // Morphological close to connect broken bars (modest kernel).
         Mat kernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(9, 3));
-        Mat close = new Mat();
+        Mat close = arena.borrow(rows, cols, CvType.CV_8UC1);
         Imgproc.morphologyEx(binOtsu, close, Imgproc.MORPH_CLOSE, kernel);
         out.add(new MatVariant("bin_close", close));
 
-        Mat closeInv = new Mat();
+        Mat closeInv = arena.borrow(rows, cols, CvType.CV_8UC1);
         Imgproc.morphologyEx(binInvOtsu, closeInv, Imgproc.MORPH_CLOSE, kernel);
         out.add(new MatVariant("bin_inv_close", closeInv));
 
@@ -148,147 +439,526 @@ public class BarcodeDecodeService {
         return out;
     }
 
-    private static String tryDecodeMatVariants(MultiFormatReader reader, MatVariant base, boolean debug, BarcodeDtos.DecodeBarcodeResponse resp) throws IOException {
-        // Crop rectangles as ratios: full, center-ish, and lower section (common for phone photos).
-        Crop[] crops = new Crop[]{
-                new Crop("full", 0.0, 0.0, 1.0, 1.0),
-                new Crop("center", 0.1, 0.2, 0.8, 0.6),
-                new Crop("lower", 0.05, 0.45, 0.9, 0.5),
-        };
-        int[] rotations = new int[]{0, 90, 180, 270};
-        double[] scales = new double[]{1.0, 0.85, 0.7, 0.55};
-
-        for (Crop crop : crops) {
-            for (int rot : rotations) {
-                for (double scale : scales) {
-                    Mat v = transformMat(base.mat, crop, rot, scale);
-                    try {
-                        BufferedImage img = matToBufferedImage(v);
-                        String label = base.name + "|crop=" + crop.name + "|rot=" + rot + "|scale=" + scale + "|" + img.getWidth() + "x" + img.getHeight();
-                        String text = tryDecodeBufferedImage(reader, img, debug, resp, label);
-                        if (text != null) return text;
-                    } finally {
-                        v.release();
-                    }
+    /**
+     * A handful of attempts per localized region: the gray and blurred bases, each at full size and
+     * at the smallest grid scale (downscaling averages out sensor noise on the bars).
+     */
+    private List<Attempt> localizedAttempts(List<MatVariant> bases, NativeMatPool.Arena arena) {
+        MatVariant gray = bases.get(1);
+        List<MatVariant> sources = List.of(gray, bases.get(2));
+        double[] scales = new double[]{1.0, SCALES[SCALES.length - 1]};
+
+        long t = System.nanoTime();
+        List<BarcodeLocalizer.Region> regions = BarcodeLocalizer.locate(gray.mat, localizeMaxRegions, arena);
+        metrics.stage(Path.OPENCV, Stage.LOCALIZE, t);
+        List<Attempt> attempts = new ArrayList<>(regions.size() * sources.size() * scales.length);
+        for (int i = 0; i < regions.size(); i++) {
+            RotatedRect rect = regions.get(i).rect();
+            for (double scale : scales) {
+                for (MatVariant source : sources) {
+                    String key = "loc|rank=" + i + "|" + source.name + "|scale=" + scale;
+                    attempts.add(new Attempt(key, reader -> {
+                        long start = System.nanoTime();
+                        Mat v = BarcodeLocalizer.extract(source.mat, rect, (int) Math.round(MAX_DIM * scale), scale, arena);
+                        metrics.stage(Path.OPENCV, Stage.TRANSFORM, start);
+                        try {
+                            String label = key + "|angle=" + Math.round(rect.angle) + "|" + v.cols() + "x" + v.rows();
+                            return new AttemptResult(label, decodeMat(reader, v, arena));
+                        } finally {
+                            arena.giveBack(v);
+                        }
+                    }));
                 }
             }
         }
-        return null;
+        return attempts;
     }
 
-    private static Mat transformMat(Mat src, Crop crop, int rotationDeg, double scale) {
-        int w = src.cols();
-        int h = src.rows();
-
-        int x = (int) Math.floor(w * crop.rx);
-        int y = (int) Math.floor(h * crop.ry);
-        int cw = (int) Math.floor(w * crop.rw);
-        int ch = (int) Math.floor(h * crop.rh);
-        cw = Math.max(1, Math.min(cw, w - x));
-        ch = Math.max(1, Math.min(ch, h - y));
+    /**
+     * Rotation-0 attempts on the rectified card (see {@link CardRectifier}): the gray copy and a blurred copy
+     * (the same pair as localized attempts), every crop, at full size and at 0.7. Empty when the image
+     * already looks square-on.
+     */
+    private List<Attempt> rectifiedAttempts(MatVariant gray, NativeMatPool.Arena arena) {
+        long t = System.nanoTime();
+        CardRectifier.Rectified rect = CardRectifier.rectify(gray.mat, MAX_DIM, arena);
+        if (rect == null) {
+            metrics.stage(Path.OPENCV, Stage.RECTIFY, t);
+            return List.of();
+        }
+        Mat blur = arena.borrow(rect.mat().rows(), rect.mat().cols(), CvType.CV_8UC1);
+        Imgproc.GaussianBlur(rect.mat(), blur, new Size(3, 3), 0);
+        metrics.stage(Path.OPENCV, Stage.RECTIFY, t);
 
-        Rect roi = new Rect(x, y, cw, ch);
-        Mat cropped = new Mat(src, roi);
+        List<MatVariant> sources = List.of(new MatVariant("gray", rect.mat()), new MatVariant("blur", blur));
+        double[] scales = new double[]{1.0, 0.7};
+        String how = (rect.quad() ? "quad" : "skew") + "|angle=" + Math.round(rect.angleDeg());
+        List<Attempt> attempts = new ArrayList<>(sources.size() * CROPS.length * scales.length);
+        for (double scale : scales) {
+            for (Crop crop : CROPS) {
+                for (MatVariant source : sources) {
+                    String key = "rect|" + source.name + "|crop=" + crop.name + "|scale=" + scale;
+                    attempts.add(new Attempt(key, reader -> {
+                        long start = System.nanoTime();
+                        Mat v = transformMat(source.mat, crop, 0, scale, arena);
+                        metrics.stage(Path.OPENCV, Stage.TRANSFORM, start);
+                        try {
+                            String label = key + "|" + how + "|" + v.cols() + "x" + v.rows();
+                            return new AttemptResult(label, decodeMat(reader, v, arena));
+                        } finally {
+                            arena.giveBack(v);
+                        }
+                    }));
+                }
+            }
+        }
+        return attempts;
+    }
 
-        Mat rotated;
-        switch (rotationDeg) {
-            case 90 -> {
-                rotated = new Mat();
-                Core.rotate(cropped, rotated, Core.ROTATE_90_CLOCKWISE);
+    private void addMatAttempts(List<Attempt> attempts, MatVariant base, NativeMatPool.Arena arena) {
+        for (Crop crop : CROPS) {
+            for (int rot : ROTATIONS) {
+                for (double scale : SCALES) {
+                    String key = variantKey(base.name, crop, rot, scale);
+                    attempts.add(new Attempt(key, reader -> {
+                        long start = System.nanoTime();
+                        Mat v = transformMat(base.mat, crop, rot, scale, arena);
+                        metrics.stage(Path.OPENCV, Stage.TRANSFORM, start);
+                        try {
+                            String label = key + "|" + v.cols() + "x" + v.rows();
+                            return new AttemptResult(label, decodeMat(reader, v, arena));
+                        } finally {
+                            arena.giveBack(v);
+                        }
+                    }));
+                }
             }
-            case 180 -> {
-                rotated = new Mat();
-                Core.rotate(cropped, rotated, Core.ROTATE_180);
+        }
+    }
+
+    /**
+     * Pyramid mode: each base is resized once per level, coarsest first, and every crop is an ROI of that
+     * level instead of a fresh resize. The coarse level runs every crop and rotation; finer levels only run
+     * the pairs where the coarse gray level showed bar-like structure, and stop when there are none.
+     */
+    private String runMatPyramid(MultiFormatReader reader, List<MatVariant> bases, DecodeRun run, NativeMatPool.Arena arena)
+            throws IOException {
+        Mat src = bases.get(0).mat;
+        double fit = Math.min(1.0, (double) MAX_DIM / Math.max(src.cols(), src.rows()));
+        int[] structure = null;
+        for (double scale : PYRAMID_SCALES) {
+            if (structure != null && !anyStructure(structure)) return null;
+            if (run.budget.expired()) return null;
+
+            int w = Math.max(1, (int) Math.round(src.cols() * scale * fit));
+            int h = Math.max(1, (int) Math.round(src.rows() * scale * fit));
+            List<MatVariant> level = new ArrayList<>(bases.size());
+            List<Mat> borrowed = new ArrayList<>(bases.size());
+            try {
+                long t = System.nanoTime();
+                for (MatVariant base : bases) {
+                    if (base.mat.cols() == w && base.mat.rows() == h) {
+                        level.add(base);
+                        continue;
+                    }
+                    Mat m = arena.borrow(h, w, base.mat.type());
+                    borrowed.add(m);
+                    Imgproc.resize(base.mat, m, new Size(w, h), 0, 0, Imgproc.INTER_AREA);
+                    level.add(new MatVariant(base.name, m));
+                }
+                metrics.stage(Path.OPENCV, Stage.TRANSFORM, t);
+
+                int[] allowed = structure;
+                if (structure == null) structure = matStructure(level.get(1).mat);
+
+                List<Attempt> attempts = new ArrayList<>();
+                for (MatVariant lv : level) {
+                    addPyramidMatAttempts(attempts, lv, scale, allowed, arena);
+                }
+                String text = runAttempts(reader, attempts, run);
+                if (text != null) return text;
+            } finally {
+                for (Mat m : borrowed) arena.giveBack(m);
             }
-            case 270 -> {
-                rotated = new Mat();
-                Core.rotate(cropped, rotated, Core.ROTATE_90_COUNTERCLOCKWISE);
+        }
+        return null;
+    }
+
+    /** allowed == null runs every crop and rotation (the coarse level). */
+    private void addPyramidMatAttempts(List<Attempt> attempts, MatVariant level, double scale, int[] allowed,
+                                              NativeMatPool.Arena arena) {
+        for (int c = 0; c < CROPS.length; c++) {
+            Crop crop = CROPS[c];
+            for (int rot : ROTATIONS) {
+                if (allowed != null && !BarStructure.allows(allowed[c], rot)) continue;
+                String key = variantKey(level.name, crop, rot, scale);
+                attempts.add(new Attempt(key, reader -> {
+                    long start = System.nanoTime();
+                    int[] b = crop.bounds(level.mat.cols(), level.mat.rows());
+                    Mat roi = level.mat.submat(new Rect(b[0], b[1], b[2], b[3]));
+                    Mat v = rotateMat(roi, rot, arena);
+                    metrics.stage(Path.OPENCV, Stage.TRANSFORM, start);
+                    try {
+                        String label = key + "|pyr|" + v.cols() + "x" + v.rows();
+                        return new AttemptResult(label, decodeMat(reader, v, arena));
+                    } finally {
+                        if (v != roi) arena.giveBack(v);
+                        roi.release();
+                    }
+                }));
             }
-            default -> rotated = cropped.clone();
         }
+    }
+
+    private static int[] matStructure(Mat gray) {
+        GrayLuminanceSource plane = GrayLuminanceSource.fromMat(gray, LUMA_BUFFER.get());
+        LUMA_BUFFER.set(plane.buffer());
+        return cropStructure(plane.buffer(), gray.cols(), gray.rows());
+    }
+
+    /** BarStructure mask per entry of CROPS, for a row-major gray plane of w x h. */
+    private static int[] cropStructure(byte[] plane, int w, int h) {
+        int[] out = new int[CROPS.length];
+        for (int c = 0; c < CROPS.length; c++) {
+            int[] b = CROPS[c].bounds(w, h);
+            out[c] = BarStructure.analyze(plane, w, b[0], b[1], b[2], b[3]);
+        }
+        return out;
+    }
+
+    private static boolean anyStructure(int[] structure) {
+        for (int mask : structure) {
+            if (mask != 0) return true;
+        }
+        return false;
+    }
+
+    static Mat transformMat(Mat src, Crop crop, int rotationDeg, double scale, NativeMatPool.Arena arena) {
+        int[] b = crop.bounds(src.cols(), src.rows());
+        Mat cropped = new Mat(src, new Rect(b[0], b[1], b[2], b[3]));
+
+        // No rotation reads straight from the ROI; resize does not need a contiguous source.
+        Mat rotated = rotateMat(cropped, rotationDeg, arena);
 
-        // Scale and cap max dimension to keep decode time bounded.
-        int maxDim = 2200;
         int tw = Math.max(1, (int) Math.round(rotated.cols() * scale));
         int th = Math.max(1, (int) Math.round(rotated.rows() * scale));
-        double fit = Math.min(1.0, (double) maxDim / Math.max(tw, th));
+        double fit = Math.min(1.0, (double) MAX_DIM / Math.max(tw, th));
         tw = Math.max(1, (int) Math.round(tw * fit));
         th = Math.max(1, (int) Math.round(th * fit));
 
-        Mat resized = new Mat();
+        Mat resized = arena.borrow(th, tw, src.type());
         Imgproc.resize(rotated, resized, new Size(tw, th), 0, 0, Imgproc.INTER_AREA);
 
-        if (rotated != cropped) rotated.release();
+        if (rotated != cropped) arena.giveBack(rotated);
         cropped.release();
         return resized;
     }
 
-    private static BufferedImage matToBufferedImage(Mat mat) throws IOException {
-        MatOfByte mob = new MatOfByte();
-        Imgcodecs.imencode(".png", mat, mob);
-        byte[] bytes = mob.toArray();
-        mob.release();
-        BufferedImage img = ImageIO.read(new ByteArrayInputStream(bytes));
-        if (img == null) throw new IllegalArgumentException("Unsupported image after processing");
-        return img;
+    /** Returns src itself for 0 degrees, otherwise a rotated copy borrowed from the arena. */
+    private static Mat rotateMat(Mat src, int rotationDeg, NativeMatPool.Arena arena) {
+        int w = src.cols();
+        int h = src.rows();
+        Mat rotated;
+        switch (rotationDeg) {
+            case 90 -> {
+                rotated = arena.borrow(w, h, src.type());
+                Core.rotate(src, rotated, Core.ROTATE_90_CLOCKWISE);
+            }
+            case 180 -> {
+                rotated = arena.borrow(h, w, src.type());
+                Core.rotate(src, rotated, Core.ROTATE_180);
+            }
+            case 270 -> {
+                rotated = arena.borrow(w, h, src.type());
+                Core.rotate(src, rotated, Core.ROTATE_90_COUNTERCLOCKWISE);
+            }
+            default -> rotated = src;
+        }
+        return rotated;
     }
 
-    private static String decodeWithJava2D(MultiFormatReader reader, byte[] imageBytes, boolean debug, BarcodeDtos.DecodeBarcodeResponse resp) {
+    static LuminanceSource matToLuminance(Mat mat, NativeMatPool.Arena arena) {
+        Mat gray = mat;
+        if (mat.type() != CvType.CV_8UC1) {
+            gray = arena.borrow(mat.rows(), mat.cols(), CvType.CV_8UC1);
+            Imgproc.cvtColor(mat, gray, mat.channels() == 4 ? Imgproc.COLOR_BGRA2GRAY : Imgproc.COLOR_BGR2GRAY);
+        }
+        try {
+            GrayLuminanceSource src = GrayLuminanceSource.fromMat(gray, LUMA_BUFFER.get());
+            LUMA_BUFFER.set(src.buffer());
+            return src;
+        } finally {
+            if (gray != mat) arena.giveBack(gray);
+        }
+    }
+
+    String decodeWithJava2D(MultiFormatReader reader, byte[] imageBytes, ImageIngest.Header header, DecodeRun run) {
         BufferedImage src;
         try {
-            src = ImageIO.read(new ByteArrayInputStream(imageBytes));
+            long t = System.nanoTime();
+            src = ImageIngest.read(imageBytes, header.factor());
+            metrics.stage(Path.JAVA2D, Stage.IMAGE_DECODE, t);
         } catch (IOException e) {
             throw new IllegalArgumentException("Unsupported image");
         }
         if (src == null) throw new IllegalArgumentException("Unsupported image");
 
-        List<BufferedVariant> bases = buildJava2DBaseVariants(src);
-        for (BufferedVariant base : bases) {
-            String text = tryDecodeBufferedVariants(reader, base, debug, resp);
+        long t = System.nanoTime();
+        List<PlaneVariant> bases = buildJava2DBaseVariants(src);
+        metrics.stage(Path.JAVA2D, Stage.BASE_VARIANTS, t);
+        if (rowScanLines > 0 && run.budget.tryAcquire()) {
+            String text = rowScan(Path.JAVA2D, bases.get(1).source(), run);
             if (text != null) return text;
         }
-        throw new IllegalArgumentException("No Code 128 barcode found");
+        String text;
+        try {
+            if (pyramid) {
+                text = runPlanePyramid(reader, bases, run);
+            } else {
+                List<Attempt> attempts = new ArrayList<>();
+                for (PlaneVariant base : bases) {
+                    addPlaneAttempts(attempts, base);
+                }
+                text = runAttempts(reader, attempts, run);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Java2D decode failed", e);
+        }
+        if (text != null) return text;
+        throw notFound(run.budget);
     }
 
-    private static List<BufferedVariant> buildJava2DBaseVariants(BufferedImage src) {
-        List<BufferedVariant> out = new ArrayList<>();
-        out.add(new BufferedVariant("orig", src));
-        out.add(new BufferedVariant("gray", toGrayscale(src)));
-        out.add(new BufferedVariant("hi_contrast", adjustContrast(toGrayscale(src), 1.35f)));
-        out.add(new BufferedVariant("threshold", threshold(toGrayscale(src))));
+    /**
+     * One luminance plane per base. "orig" is ZXing's own luminance of the decoded image (what
+     * BufferedImageLuminanceSource used to compute per attempt); "gray" is the Java2D grayscale
+     * conversion, and the other bases are derived from it with {@link GrayPlaneOps}.
+     */
+    static List<PlaneVariant> buildJava2DBaseVariants(BufferedImage src) {
+        int w = src.getWidth();
+        int h = src.getHeight();
+        int len = w * h;
+        byte[] orig = new BufferedImageLuminanceSource(src).getMatrix();
+        byte[] gray = grayPlane(toGrayscale(src));
+
+        byte[] hiContrast = new byte[len];
+        GrayPlaneOps.contrast(gray, hiContrast, len, 1.35f);
+
+        // Fixed mid-point threshold; try-harder on ZXing covers a lot, this is only a fallback.
+        byte[] threshold = new byte[len];
+        GrayPlaneOps.threshold(gray, threshold, len, 128);
+
+        // Otsu adapts to washed-out or dark photos where 128 lands on the wrong side of the bars.
+        byte[] otsu = new byte[len];
+        GrayPlaneOps.threshold(gray, otsu, len, GrayPlaneOps.otsuLevel(gray, len));
+
+        List<PlaneVariant> out = new ArrayList<>();
+        out.add(new PlaneVariant("orig", orig, w, h));
+        out.add(new PlaneVariant("gray", gray, w, h));
+        out.add(new PlaneVariant("hi_contrast", hiContrast, w, h));
+        out.add(new PlaneVariant("threshold", threshold, w, h));
+        out.add(new PlaneVariant("otsu", otsu, w, h));
         return out;
     }
 
-    private static String tryDecodeBufferedVariants(MultiFormatReader reader, BufferedVariant base, boolean debug, BarcodeDtos.DecodeBarcodeResponse resp) {
-        Crop[] crops = new Crop[]{
-                new Crop("full", 0.0, 0.0, 1.0, 1.0),
-                new Crop("center", 0.1, 0.2, 0.8, 0.6),
-                new Crop("lower", 0.05, 0.45, 0.9, 0.5),
-        };
-        int[] rotations = new int[]{0, 90, 180, 270};
-        double[] scales = new double[]{1.0, 0.85, 0.7, 0.55};
-
-        for (Crop crop : crops) {
-            for (int rot : rotations) {
-                for (double scale : scales) {
-                    BufferedImage v = transformBuffered(base.img, crop, rot, scale);
-                    String label = base.name + "|crop=" + crop.name + "|rot=" + rot + "|scale=" + scale + "|" + v.getWidth() + "x" + v.getHeight();
-                    String text = tryDecodeBufferedImage(reader, v, debug, resp, label);
-                    if (text != null) return text;
+    private void addPlaneAttempts(List<Attempt> attempts, PlaneVariant base) {
+        for (Crop crop : CROPS) {
+            for (int rot : ROTATIONS) {
+                for (double scale : SCALES) {
+                    String key = variantKey(base.name, crop, rot, scale);
+                    attempts.add(new Attempt(key, reader -> {
+                        long start = System.nanoTime();
+                        LuminanceSource v = transformPlane(base, crop, rot, scale);
+                        metrics.stage(Path.JAVA2D, Stage.TRANSFORM, start);
+                        String label = key + "|" + v.getWidth() + "x" + v.getHeight();
+                        return new AttemptResult(label, decodeTimed(Path.JAVA2D, reader, v));
+                    }));
                 }
             }
         }
+    }
+
+    /** Java2D counterpart of {@link #runMatPyramid}; each level is box-filtered once, crops are views of it. */
+    private String runPlanePyramid(MultiFormatReader reader, List<PlaneVariant> bases, DecodeRun run)
+            throws IOException {
+        PlaneVariant src = bases.get(0);
+        double fit = Math.min(1.0, (double) MAX_DIM / Math.max(src.width, src.height));
+        int[] structure = null;
+        for (double scale : PYRAMID_SCALES) {
+            if (structure != null && !anyStructure(structure)) return null;
+            if (run.budget.expired()) return null;
+
+            int w = Math.max(1, (int) Math.round(src.width * scale * fit));
+            int h = Math.max(1, (int) Math.round(src.height * scale * fit));
+            long t = System.nanoTime();
+            List<PlaneVariant> level = new ArrayList<>(bases.size());
+            for (PlaneVariant base : bases) {
+                level.add(base.resized(w, h));
+            }
+            metrics.stage(Path.JAVA2D, Stage.TRANSFORM, t);
+
+            int[] allowed = structure;
+            if (structure == null) {
+                PlaneVariant gray = level.get(1);
+                structure = cropStructure(gray.plane, gray.width, gray.height);
+            }
+
+            List<Attempt> attempts = new ArrayList<>();
+            for (PlaneVariant lv : level) {
+                addPyramidPlaneAttempts(attempts, lv, scale, allowed);
+            }
+            String text = runAttempts(reader, attempts, run);
+            if (text != null) return text;
+        }
         return null;
     }
 
-    private static String tryDecodeBufferedImage(MultiFormatReader reader, BufferedImage img, boolean debug, BarcodeDtos.DecodeBarcodeResponse resp, String label) {
-        if (debug) {
-            resp.tried.add(label);
-            resp.attempts = resp.attempts + 1;
+    private void addPyramidPlaneAttempts(List<Attempt> attempts, PlaneVariant level, double scale, int[] allowed) {
+        for (int c = 0; c < CROPS.length; c++) {
+            Crop crop = CROPS[c];
+            for (int rot : ROTATIONS) {
+                if (allowed != null && !BarStructure.allows(allowed[c], rot)) continue;
+                String key = variantKey(level.name, crop, rot, scale);
+                attempts.add(new Attempt(key, reader -> {
+                    long start = System.nanoTime();
+                    // Levels are already within MAX_DIM, so this is a crop view plus at most a rotation.
+                    LuminanceSource v = transformPlane(level, crop, rot, 1.0);
+                    metrics.stage(Path.JAVA2D, Stage.TRANSFORM, start);
+                    String label = key + "|pyr|" + v.getWidth() + "x" + v.getHeight();
+                    return new AttemptResult(label, decodeTimed(Path.JAVA2D, reader, v));
+                }));
+            }
         }
+    }
+
+    /**
+     * Row-scan fast path over the gray base (see {@link RowScanner}); null when no sampled line decodes.
+     * Callers claim one budget attempt for it first, so maxAttempts and timeoutMs cover the scan too.
+     */
+    private String rowScan(Path path, LuminanceSource gray, DecodeRun run) {
+        long t = System.nanoTime();
+        String text = RowScanner.scan(gray, rowScanLines);
+        metrics.stage(path, Stage.ROW_SCAN, t);
+        metrics.rowScan(path, text != null);
+        recordTried(run, "row_scan|lines=" + rowScanLines + "|" + gray.getWidth() + "x" + gray.getHeight());
+        return text;
+    }
+
+    static String variantKey(String base, Crop crop, int rot, double scale) {
+        return base + "|crop=" + crop.name + "|rot=" + rot + "|scale=" + scale;
+    }
+
+    /**
+     * Runs attempts, historically best variants first, and returns the first decoded text (or null).
+     * With a decode pool the attempts fan out, but the lowest-index winner is still the one returned,
+     * so the result (and the debug tried list) matches the sequential sweep.
+     */
+    private String runAttempts(MultiFormatReader reader, List<Attempt> attempts, DecodeRun run)
+            throws IOException {
+        if (run.budget.expired()) return null;
+        List<Attempt> ordered = variantStats.order(attempts, Attempt::key);
+        Winner winner = decodeExecutor == null || ordered.size() < 2
+                ? runSequential(reader, ordered, run)
+                : runParallel(ordered, run);
+        if (winner == null) return null;
 
+        if (run.learn) {
+            variantStats.recordWin(winner.key);
+            metrics.win(winner.key);
+        }
+        return winner.text;
+    }
+
+    private static Winner runSequential(MultiFormatReader reader, List<Attempt> attempts, DecodeRun run)
+            throws IOException {
+        for (Attempt attempt : attempts) {
+            if (!run.budget.tryAcquire()) return null;
+            AttemptResult r = attempt.body.run(reader);
+            recordTried(run, r.label);
+            if (r.text != null) return new Winner(attempt.key, r.text);
+        }
+        return null;
+    }
+
+    private Winner runParallel(List<Attempt> attempts, DecodeRun run)
+            throws IOException {
+        AtomicInteger winner = new AtomicInteger(Integer.MAX_VALUE);
+        List<Future<AttemptResult>> futures = new ArrayList<>(attempts.size());
+        for (int i = 0; i < attempts.size(); i++) {
+            int index = i;
+            Attempt attempt = attempts.get(i);
+            futures.add(decodeExecutor.submit(() -> {
+                // A lower-index attempt already decoded, so this one can no longer win.
+                if (winner.get() < index || !run.budget.tryAcquire()) return null;
+                AttemptResult r = attempt.body.run(WORKER_READER.get());
+                if (r.text != null) winner.accumulateAndGet(index, Math::min);
+                return r;
+            }));
+        }
+
+        // Drain every future, even after a winner or an interrupt: callers release the shared base mats once
+        // we return, so no attempt may still be reading them. cancel() would not wait for a running attempt.
+        Winner found = null;
+        Throwable failure = null;
+        boolean interrupted = false;
+        for (int i = 0; i < futures.size(); i++) {
+            AttemptResult r;
+            try {
+                r = futures.get(i).get();
+            } catch (InterruptedException e) {
+                // Attempts that have not started yet see this and return at once; running ones are waited out.
+                // get() cleared the interrupt flag, so the retry blocks; it is restored once everything is done.
+                interrupted = true;
+                winner.set(-1);
+                i--;
+                continue;
+            } catch (ExecutionException e) {
+                if (found == null && failure == null) failure = e.getCause();
+                continue;
+            }
+            if (found != null || failure != null || r == null) continue;
+            recordTried(run, r.label);
+            if (r.text != null) found = new Winner(attempts.get(i).key, r.text);
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while decoding barcode");
+        }
+        if (failure instanceof IOException io) throw io;
+        if (failure instanceof RuntimeException re) throw re;
+        if (failure instanceof Error err) throw err;
+        if (failure != null) throw new IllegalStateException("Barcode decode attempt failed", failure);
+        return found;
+    }
+
+    private static void recordTried(DecodeRun run, String label) {
+        if (!run.debug) return;
+        run.resp.tried.add(label);
+        run.resp.attempts = run.resp.attempts + 1;
+    }
+
+    private static BarcodeNotFoundException notFound(DecodeBudget budget) {
+        String search = budget.cutOff() ? BarcodeNotFoundException.CUT_OFF : BarcodeNotFoundException.EXHAUSTED;
+        return new BarcodeNotFoundException(NOT_FOUND_MESSAGE, search, budget.used(), budget.elapsedMs());
+    }
+
+    /** Luminance conversion and the ZXing call of one OpenCV attempt, timed as separate stages. */
+    private String decodeMat(MultiFormatReader reader, Mat v, NativeMatPool.Arena arena) {
+        long t = System.nanoTime();
+        LuminanceSource src = matToLuminance(v, arena);
+        metrics.stage(Path.OPENCV, Stage.LUMINANCE, t);
+        return decodeTimed(Path.OPENCV, reader, src);
+    }
+
+    private String decodeTimed(Path path, MultiFormatReader reader, LuminanceSource src) {
+        long t = System.nanoTime();
+        String text = decodeLuminance(reader, src);
+        metrics.stage(path, Stage.ZXING, t);
+        return text;
+    }
+
+    static String decodeLuminance(MultiFormatReader reader, LuminanceSource src) {
         try {
-            LuminanceSource src = new BufferedImageLuminanceSource(img);
             BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(src));
             Result result = reader.decodeWithState(bitmap);
             return result.getText();
@@ -299,58 +969,34 @@ public class BarcodeDecodeService {
         }
     }
 
-    private static BufferedImage transformBuffered(BufferedImage src, Crop crop, int rotationDeg, double scale) {
-        int w = src.getWidth();
-        int h = src.getHeight();
-
-        int x = (int) Math.floor(w * crop.rx);
-        int y = (int) Math.floor(h * crop.ry);
-        int cw = (int) Math.floor(w * crop.rw);
-        int ch = (int) Math.floor(h * crop.rh);
-        cw = Math.max(1, Math.min(cw, w - x));
-        ch = Math.max(1, Math.min(ch, h - y));
-
-        BufferedImage cropped = src.getSubimage(x, y, cw, ch);
-
-        BufferedImage rotated = rotate(cropped, rotationDeg);
+    /**
+     * Crop, quarter-turn rotation and downscale of a base plane, same geometry as {@link #transformMat}.
+     * An unscaled, unrotated crop is a view over the base plane; otherwise the crop region is box-filtered
+     * first (scaling commutes with quarter turns) and the smaller result is rotated by index remapping.
+     */
+    static LuminanceSource transformPlane(PlaneVariant base, Crop crop, int rotationDeg, double scale) {
+        int[] b = crop.bounds(base.width, base.height);
+        boolean quarter = rotationDeg == 90 || rotationDeg == 270;
+        int rw = quarter ? b[3] : b[2];
+        int rh = quarter ? b[2] : b[3];
 
-        int maxDim = 2200;
-        int tw = Math.max(1, (int) Math.round(rotated.getWidth() * scale));
-        int th = Math.max(1, (int) Math.round(rotated.getHeight() * scale));
-        double fit = Math.min(1.0, (double) maxDim / Math.max(tw, th));
+        int tw = Math.max(1, (int) Math.round(rw * scale));
+        int th = Math.max(1, (int) Math.round(rh * scale));
+        double fit = Math.min(1.0, (double) MAX_DIM / Math.max(tw, th));
         tw = Math.max(1, (int) Math.round(tw * fit));
         th = Math.max(1, (int) Math.round(th * fit));
 
-        if (tw == rotated.getWidth() && th == rotated.getHeight()) return rotated;
-
-        BufferedImage out = new BufferedImage(tw, th, rotated.getType());
-        Graphics2D g = out.createGraphics();
-        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        g.drawImage(rotated, 0, 0, tw, th, null);
-        g.dispose();
-        return out;
-    }
-
-    private static BufferedImage rotate(BufferedImage src, int rotationDeg) {
-        int deg = ((rotationDeg % 360) + 360) % 360;
-        if (deg == 0) return src;
+        if (tw == rw && th == rh) {
+            if (rotationDeg == 0) return base.source().crop(b[0], b[1], b[2], b[3]);
+            byte[] rotated = GrayPlaneTransform.rotate(base.plane, base.width, b[0], b[1], b[2], b[3], rotationDeg);
+            return new GrayLuminanceSource(rotated, tw, th);
+        }
 
-        double rads = Math.toRadians(deg);
-        double sin = Math.abs(Math.sin(rads));
-        double cos = Math.abs(Math.cos(rads));
-        int w = src.getWidth();
-        int h = src.getHeight();
-        int newW = (int) Math.floor(w * cos + h * sin);
-        int newH = (int) Math.floor(h * cos + w * sin);
-
-        BufferedImage rotated = new BufferedImage(newW, newH, src.getType());
-        Graphics2D g2d = rotated.createGraphics();
-        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        g2d.translate((newW - w) / 2.0, (newH - h) / 2.0);
-        g2d.rotate(rads, w / 2.0, h / 2.0);
-        g2d.drawRenderedImage(src, null);
-        g2d.dispose();
-        return rotated;
+        int sw = quarter ? th : tw;
+        int sh = quarter ? tw : th;
+        byte[] scaled = GrayPlaneTransform.resizeBox(base.plane, base.width, b[0], b[1], b[2], b[3], sw, sh);
+        if (rotationDeg == 0) return new GrayLuminanceSource(scaled, sw, sh);
+        return new GrayLuminanceSource(GrayPlaneTransform.rotate(scaled, sw, 0, 0, sw, sh, rotationDeg), tw, th);
     }
 
     private static BufferedImage toGrayscale(BufferedImage src) {
@@ -361,39 +1007,58 @@ public class BarcodeDecodeService {
         return out;
     }
 
-    private static BufferedImage adjustContrast(BufferedImage srcGray, float factor) {
-        BufferedImage out = new BufferedImage(srcGray.getWidth(), srcGray.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
-        for (int y = 0; y < srcGray.getHeight(); y++) {
-            for (int x = 0; x < srcGray.getWidth(); x++) {
-                int v = srcGray.getRaster().getSample(x, y, 0);
-                int vv = (int) Math.round((v - 128) * factor + 128);
-                vv = Math.max(0, Math.min(255, vv));
-                out.getRaster().setSample(x, y, 0, vv);
-            }
-        }
-        return out;
+    /** Backing array of a TYPE_BYTE_GRAY image we allocated (scanline stride == width, offset 0). */
+    private static byte[] grayPlane(BufferedImage gray) {
+        return ((DataBufferByte) gray.getRaster().getDataBuffer()).getData();
     }
 
-    private static BufferedImage threshold(BufferedImage srcGray) {
-        // Simple global threshold around mid-point; try-harder on ZXing covers a lot, this is only a fallback.
-        int t = 128;
-        BufferedImage out = new BufferedImage(srcGray.getWidth(), srcGray.getHeight(), BufferedImage.TYPE_BYTE_BINARY);
-        for (int y = 0; y < srcGray.getHeight(); y++) {
-            for (int x = 0; x < srcGray.getWidth(); x++) {
-                int v = srcGray.getRaster().getSample(x, y, 0);
-                int b = v >= t ? 255 : 0;
-                out.getRaster().setSample(x, y, 0, b);
-            }
-        }
-        return out;
+    /**
+     * Per-request state shared by every attempt of one decode. learn=false keeps the winner out of the variant
+     * statistics (warm-up and benchmark runs decode synthetic cards that say nothing about real uploads).
+     */
+    record DecodeRun(boolean debug, BarcodeDtos.DecodeBarcodeResponse resp, DecodeBudget budget, boolean learn) {
+    }
+
+    @FunctionalInterface
+    private interface AttemptBody {
+        AttemptResult run(MultiFormatReader reader) throws IOException;
+    }
+
+    /** One variant to try; key is the stable base|crop|rot|scale identity used for win statistics. */
+    private record Attempt(String key, AttemptBody body) {
+    }
+
+    private record Winner(String key, String text) {
+    }
+
+    private record AttemptResult(String label, String text) {
     }
 
-    private record Crop(String name, double rx, double ry, double rw, double rh) {
+    record Crop(String name, double rx, double ry, double rw, double rh) {
+        /** {x, y, width, height} of this crop in a w x h image, clamped to at least one pixel. */
+        int[] bounds(int w, int h) {
+            int x = (int) Math.floor(w * rx);
+            int y = (int) Math.floor(h * ry);
+            int cw = (int) Math.floor(w * rw);
+            int ch = (int) Math.floor(h * rh);
+            cw = Math.max(1, Math.min(cw, w - x));
+            ch = Math.max(1, Math.min(ch, h - y));
+            return new int[]{x, y, cw, ch};
+        }
     }
 
-    private record MatVariant(String name, Mat mat) {
+    record MatVariant(String name, Mat mat) {
     }
 
-    private record BufferedVariant(String name, BufferedImage img) {
+    /** A base variant for the Java2D path: a tightly packed width x height luminance plane. */
+    record PlaneVariant(String name, byte[] plane, int width, int height) {
+        GrayLuminanceSource source() {
+            return new GrayLuminanceSource(plane, width, height);
+        }
+
+        PlaneVariant resized(int w, int h) {
+            if (w == width && h == height) return this;
+            return new PlaneVariant(name, GrayPlaneTransform.resizeBox(plane, width, 0, 0, width, height, w, h), w, h);
+        }
     }
 }
@@ -0,0 +1,186 @@
+package com.dlb.giftcards.service;
+
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Proposes oriented regions that look like 1D barcodes, so the decoder can try a few deskewed crops
+ * before falling back to the blind crop/rotation/scale grid.
+ * <p>
+ * A barcode is a patch with strong gradients that all point the same way (parallel bars). That is
+ * measured with the structure tensor: energy = Jxx + Jyy, coherence = sqrt((Jxx - Jyy)^2 + 4 Jxy^2) / energy.
+ * Text and card artwork have energy too, but their edges point every which way, so coherence stays low.
+ */
+final class BarcodeLocalizer {
+
+    // Analysis runs on a downscaled copy; regions are mapped back to full resolution.
+    private static final int WORK_MAX_DIM = 640;
+    // Structure tensor averaging window at work resolution, roughly a few bar widths.
+    private static final int TENSOR_WINDOW = 15;
+    // Ignore specks: candidate must cover at least this fraction of the work image.
+    private static final double MIN_AREA_FRACTION = 0.004;
+    // Pad the rotated rect so the quiet zone and bar ends survive the crop.
+    private static final double PAD_LONG = 1.15;
+    private static final double PAD_SHORT = 1.35;
+
+    record Region(RotatedRect rect, double score) {
+    }
+
+    private BarcodeLocalizer() {
+    }
+
+    /**
+     * Returns up to maxRegions candidate regions (in gray's coordinates), best first.
+     * Work-resolution intermediates are borrowed from the arena and given back before returning.
+     */
+    static List<Region> locate(Mat gray, int maxRegions, NativeMatPool.Arena arena) {
+        List<Mat> temps = new ArrayList<>();
+        List<Mat> borrowed = new ArrayList<>();
+        try {
+            double f = Math.min(1.0, (double) WORK_MAX_DIM / Math.max(gray.cols(), gray.rows()));
+            int sw = Math.max(1, (int) (gray.cols() * f));
+            int sh = Math.max(1, (int) (gray.rows() * f));
+            Mat small = track(borrowed, arena.borrow(sh, sw, CvType.CV_8UC1));
+            if (f < 1.0) {
+                Imgproc.resize(gray, small, new Size(sw, sh), 0, 0, Imgproc.INTER_AREA);
+            } else {
+                gray.copyTo(small);
+            }
+
+            Mat gx = track(borrowed, arena.borrow(sh, sw, CvType.CV_32F));
+            Mat gy = track(borrowed, arena.borrow(sh, sw, CvType.CV_32F));
+            Imgproc.Sobel(small, gx, CvType.CV_32F, 1, 0, 3);
+            Imgproc.Sobel(small, gy, CvType.CV_32F, 0, 1, 3);
+
+            Size window = new Size(TENSOR_WINDOW, TENSOR_WINDOW);
+            Mat jxx = track(borrowed, arena.borrow(sh, sw, CvType.CV_32F));
+            Mat jyy = track(borrowed, arena.borrow(sh, sw, CvType.CV_32F));
+            Mat jxy = track(borrowed, arena.borrow(sh, sw, CvType.CV_32F));
+            Mat product = track(borrowed, arena.borrow(sh, sw, CvType.CV_32F));
+            Core.multiply(gx, gx, product);
+            Imgproc.boxFilter(product, jxx, -1, window);
+            Core.multiply(gy, gy, product);
+            Imgproc.boxFilter(product, jyy, -1, window);
+            Core.multiply(gx, gy, product);
+            Imgproc.boxFilter(product, jxy, -1, window);
+
+            Mat energy = track(borrowed, arena.borrow(sh, sw, CvType.CV_32F));
+            Core.add(jxx, jyy, energy);
+
+            Mat diff = track(borrowed, arena.borrow(sh, sw, CvType.CV_32F));
+            Core.subtract(jxx, jyy, diff);
+            Mat anisotropy = track(borrowed, arena.borrow(sh, sw, CvType.CV_32F));
+            Core.multiply(diff, diff, anisotropy);
+            Mat jxy2 = track(borrowed, arena.borrow(sh, sw, CvType.CV_32F));
+            Core.multiply(jxy, jxy, jxy2, 4.0);
+            Core.add(anisotropy, jxy2, anisotropy);
+            Core.sqrt(anisotropy, anisotropy);
+
+            // coherence in [0,1]; small epsilon keeps flat areas at 0 instead of NaN.
+            Mat coherence = track(borrowed, arena.borrow(sh, sw, CvType.CV_32F));
+            Mat energyEps = track(borrowed, arena.borrow(sh, sw, CvType.CV_32F));
+            Core.add(energy, new Scalar(1e-3), energyEps);
+            Core.divide(anisotropy, energyEps, coherence);
+
+            // Weight by normalized gradient strength so coherent but faint texture (paper grain) drops out.
+            Mat strength = track(borrowed, arena.borrow(sh, sw, CvType.CV_32F));
+            Core.sqrt(energy, strength);
+            Core.normalize(strength, strength, 0, 1, Core.NORM_MINMAX);
+            Mat score = track(borrowed, arena.borrow(sh, sw, CvType.CV_32F));
+            Core.multiply(coherence, strength, score);
+
+            Mat score8 = track(borrowed, arena.borrow(sh, sw, CvType.CV_8UC1));
+            score.convertTo(score8, CvType.CV_8U, 255.0);
+            Mat mask = track(borrowed, arena.borrow(sh, sw, CvType.CV_8UC1));
+            Imgproc.threshold(score8, mask, 0, 255, Imgproc.THRESH_BINARY | Imgproc.THRESH_OTSU);
+
+            Mat kernel = track(temps, Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE, new Size(7, 7)));
+            Imgproc.morphologyEx(mask, mask, Imgproc.MORPH_CLOSE, kernel);
+            Imgproc.morphologyEx(mask, mask, Imgproc.MORPH_OPEN, kernel);
+
+            List<MatOfPoint> contours = new ArrayList<>();
+            Mat hierarchy = track(temps, new Mat());
+            Imgproc.findContours(mask, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+
+            double minArea = MIN_AREA_FRACTION * small.cols() * small.rows();
+            List<Region> regions = new ArrayList<>();
+            for (MatOfPoint c : contours) {
+                try {
+                    if (Imgproc.contourArea(c) < minArea) continue;
+                    MatOfPoint2f c2f = new MatOfPoint2f(c.toArray());
+                    RotatedRect r = Imgproc.minAreaRect(c2f);
+                    c2f.release();
+
+                    Rect box = clip(Imgproc.boundingRect(c), small.cols(), small.rows());
+                    if (box.width <= 0 || box.height <= 0) continue;
+                    Mat roi = score.submat(box);
+                    double meanScore = Core.mean(roi).val[0];
+                    roi.release();
+
+                    regions.add(new Region(scaleUp(r, 1.0 / f), meanScore * r.size.area()));
+                } finally {
+                    c.release();
+                }
+            }
+
+            regions.sort(Comparator.comparingDouble(Region::score).reversed());
+            return regions.size() > maxRegions ? new ArrayList<>(regions.subList(0, maxRegions)) : regions;
+        } finally {
+            for (Mat m : temps) m.release();
+            for (Mat m : borrowed) arena.giveBack(m);
+        }
+    }
+
+    /**
+     * Cuts the region out of src with one warpAffine, rotated so the long side is horizontal
+     * (bars vertical), padded, scaled, and capped at maxDim. The result is borrowed from the arena.
+     */
+    static Mat extract(Mat src, RotatedRect region, int maxDim, double scale, NativeMatPool.Arena arena) {
+        double w = region.size.width;
+        double h = region.size.height;
+        double angle = region.angle;
+        if (w < h) {
+            double t = w;
+            w = h;
+            h = t;
+            angle += 90.0;
+        }
+        w *= PAD_LONG;
+        h *= PAD_SHORT;
+
+        double fit = Math.min(scale, (double) maxDim / Math.max(w, h));
+        int ow = Math.max(1, (int) Math.round(w * fit));
+        int oh = Math.max(1, (int) Math.round(h * fit));
+
+        // Rotate about the region center, scale to fit, then move the center to the middle of the output.
+        Mat m = Imgproc.getRotationMatrix2D(region.center, angle, fit);
+        m.put(0, 2, m.get(0, 2)[0] + ow / 2.0 - region.center.x);
+        m.put(1, 2, m.get(1, 2)[0] + oh / 2.0 - region.center.y);
+
+        Mat out = arena.borrow(oh, ow, src.type());
+        Imgproc.warpAffine(src, out, m, new Size(ow, oh), Imgproc.INTER_LINEAR, Core.BORDER_REPLICATE);
+        m.release();
+        return out;
+    }
+
+    private static Rect clip(Rect r, int cols, int rows) {
+        int x = Math.max(0, r.x);
+        int y = Math.max(0, r.y);
+        int x2 = Math.min(cols, r.x + r.width);
+        int y2 = Math.min(rows, r.y + r.height);
+        return new Rect(x, y, Math.max(0, x2 - x), Math.max(0, y2 - y));
+    }
+
+    private static RotatedRect scaleUp(RotatedRect r, double s) {
+        return new RotatedRect(new Point(r.center.x * s, r.center.y * s), new Size(r.size.width * s, r.size.height * s), r.angle);
+    }
+
+    private static Mat track(List<Mat> temps, Mat m) {
+        temps.add(m);
+        return m;
+    }
+}
@@ -0,0 +1,258 @@
+package com.dlb.giftcards.service;
+
+import com.dlb.giftcards.dto.BarcodeDtos;
+import com.dlb.giftcards.exception.DecoderBusyException;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.multi.GenericMultipleBarcodeReader;
+import org.opencv.core.Mat;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds every barcode on a card (e.g. the Code 128 serial plus a QR or PDF417 PIN) in one sweep over the
+ * same preprocessed variants {@link BarcodeDecodeService} uses, with ZXing's multiple-barcode reader on
+ * each variant. Hits are de-duplicated by format and text; the sweep stops early once every requested
+ * format has been seen, or when the request's decode budget runs out.
+ * <p>
+ * Only rotation 0 is swept: with TRY_HARDER the 1D readers also scan the image turned 90 degrees, and
+ * the 2D readers are rotation invariant, so the other grid rotations would only find the same codes again.
+ */
+@Service
+public class BarcodeMultiDecodeService {
+
+    static final List<BarcodeFormat> DEFAULT_FORMATS = List.of(BarcodeFormat.CODE_128, BarcodeFormat.QR_CODE, BarcodeFormat.PDF_417);
+    private static final double[] SCALES = new double[]{1.0, 0.7};
+
+    private final BarcodeDecodeService decodeService;
+    private final NativeMatPool matPool;
+    private final DecodeBulkhead bulkhead;
+
+    public BarcodeMultiDecodeService(BarcodeDecodeService decodeService, NativeMatPool matPool, DecodeBulkhead bulkhead) {
+        this.decodeService = decodeService;
+        this.matPool = matPool;
+        this.bulkhead = bulkhead;
+    }
+
+    /** formats are ZXing BarcodeFormat names; null or empty means CODE_128, QR_CODE and PDF_417. */
+    public BarcodeDtos.MultiDecodeResponse decode(byte[] imageBytes, List<String> formats, boolean debug,
+                                                  BarcodeDecodeService.DecodeLimits limits) {
+        if (imageBytes == null || imageBytes.length == 0) {
+            throw new IllegalArgumentException("file is empty");
+        }
+        Set<BarcodeFormat> wanted = parseFormats(formats);
+        // Same admission as single decodes: the sweep builds the same base variants.
+        ImageIngest.Header header = ImageIngest.header(imageBytes);
+        try (DecodeBulkhead.Permit permit = bulkhead.acquire(decodeService.estimateWorkingBytes(imageBytes, header))) {
+            return sweep(imageBytes, header, wanted, debug, limits);
+        }
+    }
+
+    private BarcodeDtos.MultiDecodeResponse sweep(byte[] imageBytes, ImageIngest.Header header, Set<BarcodeFormat> wanted, boolean debug,
+                                                  BarcodeDecodeService.DecodeLimits limits) {
+        DecodeBudget budget = decodeService.newBudget(limits);
+
+        BarcodeDtos.MultiDecodeResponse resp = new BarcodeDtos.MultiDecodeResponse();
+        resp.formats = wanted.stream().map(Enum::name).toList();
+        if (debug) resp.tried = new ArrayList<>();
+        // Decoding happens at reduced size for large photos; result points are scaled back by this factor.
+        int subsample = header.factor();
+        Sweep sweep = new Sweep(wanted, budget, resp, subsample);
+
+        boolean opencvAvailable = BarcodeDecodeService.tryLoadOpenCv();
+        resp.usedOpenCv = opencvAvailable;
+        if (opencvAvailable) {
+            try {
+                sweepOpenCv(imageBytes, sweep);
+            } catch (DecoderBusyException e) {
+                // Out of native memory admission: Java2D would only hide the overload as no codes.
+                throw e;
+            } catch (Exception e) {
+                // Same as the single decode: fall back to Java2D, keep the reason for debug callers.
+                if (debug) resp.error = "opencv_error:" + e.getClass().getSimpleName();
+            }
+        }
+        if (!sweep.complete() && !budget.expired()) sweepJava2D(imageBytes, sweep);
+
+        resp.codes = new ArrayList<>(sweep.found.values());
+        resp.search = sweep.complete() ? "complete" : budget.cutOff() ? "cut_off" : "exhausted";
+        resp.attempts = budget.used();
+        resp.elapsedMs = budget.elapsedMs();
+        return resp;
+    }
+
+    private void sweepOpenCv(byte[] imageBytes, Sweep sweep) {
+        Mat mat = ImageIngest.imdecode(imageBytes, sweep.subsample);
+        if (mat.empty()) {
+            mat.release();
+            throw new IllegalArgumentException("Unsupported image");
+        }
+        try (NativeMatPool.Arena arena = matPool.openArena(sweep.budget.remainingMs())) {
+            List<BarcodeDecodeService.MatVariant> bases = BarcodeDecodeService.buildOpenCvBaseVariants(mat, arena);
+            for (BarcodeDecodeService.Crop crop : BarcodeDecodeService.CROPS) {
+                for (BarcodeDecodeService.MatVariant base : bases) {
+                    for (double scale : SCALES) {
+                        if (sweep.done() || !sweep.budget.tryAcquire()) return;
+                        Mat v = BarcodeDecodeService.transformMat(base.mat(), crop, 0, scale, arena);
+                        try {
+                            int[] b = crop.bounds(base.mat().cols(), base.mat().rows());
+                            sweep.run(BarcodeDecodeService.matToLuminance(v, arena),
+                                    BarcodeDecodeService.variantKey(base.name(), crop, 0, scale), b, v.cols(), v.rows());
+                        } finally {
+                            arena.giveBack(v);
+                        }
+                    }
+                }
+            }
+        } finally {
+            mat.release();
+        }
+    }
+
+    private void sweepJava2D(byte[] imageBytes, Sweep sweep) {
+        BufferedImage src;
+        try {
+            src = ImageIngest.read(imageBytes, sweep.subsample);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unsupported image");
+        }
+        if (src == null) throw new IllegalArgumentException("Unsupported image");
+
+        List<BarcodeDecodeService.PlaneVariant> bases = BarcodeDecodeService.buildJava2DBaseVariants(src);
+        for (BarcodeDecodeService.Crop crop : BarcodeDecodeService.CROPS) {
+            for (BarcodeDecodeService.PlaneVariant base : bases) {
+                for (double scale : SCALES) {
+                    if (sweep.done() || !sweep.budget.tryAcquire()) return;
+                    LuminanceSource v = BarcodeDecodeService.transformPlane(base, crop, 0, scale);
+                    int[] b = crop.bounds(base.width(), base.height());
+                    sweep.run(v, BarcodeDecodeService.variantKey(base.name(), crop, 0, scale), b, v.getWidth(), v.getHeight());
+                }
+            }
+        }
+    }
+
+    private static Set<BarcodeFormat> parseFormats(List<String> formats) {
+        if (formats == null || formats.isEmpty()) return EnumSet.copyOf(DEFAULT_FORMATS);
+        Set<BarcodeFormat> out = EnumSet.noneOf(BarcodeFormat.class);
+        for (String f : formats) {
+            if (f == null || f.isBlank()) continue;
+            try {
+                out.add(BarcodeFormat.valueOf(f.trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown barcode format: " + f);
+            }
+        }
+        if (out.isEmpty()) return EnumSet.copyOf(DEFAULT_FORMATS);
+        return out;
+    }
+
+    /** State of one request's sweep: the reader, what was found so far, and the budget. */
+    private static final class Sweep {
+        final Set<BarcodeFormat> wanted;
+        final DecodeBudget budget;
+        final BarcodeDtos.MultiDecodeResponse resp;
+        final int subsample;
+        final Map<String, BarcodeDtos.DecodedCode> found = new LinkedHashMap<>();
+        final Set<BarcodeFormat> seen = EnumSet.noneOf(BarcodeFormat.class);
+        final MultiFormatReader reader = new MultiFormatReader();
+        final GenericMultipleBarcodeReader multi = new GenericMultipleBarcodeReader(reader);
+        final Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+
+        Sweep(Set<BarcodeFormat> wanted, DecodeBudget budget, BarcodeDtos.MultiDecodeResponse resp, int subsample) {
+            this.wanted = wanted;
+            this.budget = budget;
+            this.resp = resp;
+            this.subsample = subsample;
+            hints.put(DecodeHintType.POSSIBLE_FORMATS, List.copyOf(wanted));
+            hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        }
+
+        boolean complete() {
+            return seen.containsAll(wanted);
+        }
+
+        boolean done() {
+            return complete() || budget.expired();
+        }
+
+        /**
+         * Decodes one variant. crop is {x, y, w, h} of the variant's region in the decoded image and
+         * (vw, vh) the variant's size; with the subsample factor that maps result points back to the upload.
+         */
+        void run(LuminanceSource src, String key, int[] crop, int vw, int vh) {
+            if (resp.tried != null) resp.tried.add(key + "|" + vw + "x" + vh);
+            Result[] results;
+            try {
+                results = multi.decodeMultiple(new BinaryBitmap(new HybridBinarizer(src)), hints);
+            } catch (NotFoundException e) {
+                return;
+            } finally {
+                reader.reset();
+            }
+            double fx = (double) crop[2] / vw;
+            double fy = (double) crop[3] / vh;
+            for (Result r : results) {
+                String id = r.getBarcodeFormat() + "|" + r.getText();
+                BarcodeDtos.DecodedCode code = found.get(id);
+                if (code != null) {
+                    code.hits++;
+                    continue;
+                }
+                found.put(id, toCode(r, key, crop, fx, fy, subsample));
+                seen.add(r.getBarcodeFormat());
+            }
+        }
+
+        private static BarcodeDtos.DecodedCode toCode(Result r, String key, int[] crop, double fx, double fy, int subsample) {
+            BarcodeDtos.DecodedCode code = new BarcodeDtos.DecodedCode();
+            code.format = r.getBarcodeFormat().name();
+            code.rawText = r.getText();
+            if (r.getBarcodeFormat() == BarcodeFormat.CODE_128) {
+                String digits = r.getText().replaceAll("\\D", "");
+                code.serialNumber = digits.isEmpty() ? null : digits;
+            }
+            code.variant = key;
+            code.hits = 1;
+            code.points = new ArrayList<>();
+
+            float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+            ResultPoint[] points = r.getResultPoints() == null ? new ResultPoint[0] : r.getResultPoints();
+            for (ResultPoint p : points) {
+                if (p == null) continue;
+                float x = (float) ((crop[0] + p.getX() * fx) * subsample);
+                float y = (float) ((crop[1] + p.getY() * fy) * subsample);
+                code.points.add(new float[]{x, y});
+                minX = Math.min(minX, x);
+                minY = Math.min(minY, y);
+                maxX = Math.max(maxX, x);
+                maxY = Math.max(maxY, y);
+            }
+            if (!code.points.isEmpty()) {
+                BarcodeDtos.CodeBox box = new BarcodeDtos.CodeBox();
+                box.x = (int) Math.floor(minX);
+                box.y = (int) Math.floor(minY);
+                box.width = (int) Math.ceil(maxX) - box.x;
+                box.height = (int) Math.ceil(maxY) - box.y;
+                code.box = box;
+            }
+            return code;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.dlb.giftcards.service;
+
+import com.dlb.giftcards.dto.BarcodeDtos;
+import com.dlb.giftcards.entity.BarcodeVariantStatEntity;
+import com.dlb.giftcards.repository.BarcodeVariantStatRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Learns which decode variants (base|crop|rot|scale) actually produce results and ranks them first.
+ * Counts live in memory for ordering; changed counts are written to SQLite every
+ * APP_BARCODE_VARIANT_STATS_FLUSH_MS and at shutdown so they survive restarts. Recording a win never touches
+ * the database, so decoders do not queue behind a write and a storage error cannot fail a decode.
+ */
+@Service
+public class BarcodeVariantStatsService {
+
+    private static final Logger log = LoggerFactory.getLogger(BarcodeVariantStatsService.class);
+
+    private final BarcodeVariantStatRepository repo;
+    private final Map<String, Stat> stats = new ConcurrentHashMap<>();
+    // Serializes flush with reset, so a flush in progress cannot write back counts that reset just cleared.
+    private final Object flushLock = new Object();
+    private final ScheduledExecutorService flusher;
+    private volatile boolean frozen;
+
+    private static final class Stat {
+        final LongAdder wins = new LongAdder();
+        final AtomicBoolean dirty = new AtomicBoolean();
+        volatile Instant lastWinAt;
+    }
+
+    public BarcodeVariantStatsService(
+            BarcodeVariantStatRepository repo,
+            @Value("${APP_BARCODE_VARIANT_STATS_FROZEN:false}") boolean frozen,
+            @Value("${APP_BARCODE_VARIANT_STATS_FLUSH_MS:10000}") long flushMs
+    ) {
+        this.repo = repo;
+        this.frozen = frozen;
+        this.flusher = flushMs > 0
+                ? Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "variant-stats-flush");
+            t.setDaemon(true);
+            return t;
+        })
+                : null;
+        if (flusher != null) flusher.scheduleWithFixedDelay(this::flush, flushMs, flushMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PostConstruct
+    void load() {
+        for (BarcodeVariantStatEntity e : repo.findAll()) {
+            Stat s = new Stat();
+            s.wins.add(e.getWins());
+            s.lastWinAt = e.getLastWinAt();
+            stats.put(e.getVariantKey(), s);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (flusher != null) flusher.shutdownNow();
+        flush();
+    }
+
+    /**
+     * Returns the items reordered by historical wins (most first). The sort is stable, so variants
+     * without wins keep their hard-coded order behind the learned ones.
+     */
+    public <T> List<T> order(List<T> items, Function<T, String> keyOf) {
+        if (stats.isEmpty()) return items;
+        List<T> out = new ArrayList<>(items);
+        out.sort(Comparator.comparingLong((T item) -> wins(keyOf.apply(item))).reversed());
+        return out;
+    }
+
+    public void recordWin(String variantKey) {
+        if (frozen || variantKey == null) return;
+
+        Stat s = stats.computeIfAbsent(variantKey, k -> new Stat());
+        s.wins.increment();
+        s.lastWinAt = Instant.now();
+        s.dirty.set(true);
+    }
+
+    /** Writes the counts changed since the last flush. Failures are logged and retried on the next flush. */
+    void flush() {
+        synchronized (flushLock) {
+            List<BarcodeVariantStatEntity> changed = new ArrayList<>();
+            List<Stat> flushed = new ArrayList<>();
+            stats.forEach((key, s) -> {
+                // Cleared before reading, so a win recorded meanwhile marks it dirty again for the next flush.
+                if (!s.dirty.getAndSet(false)) return;
+                BarcodeVariantStatEntity e = new BarcodeVariantStatEntity();
+                e.setVariantKey(key);
+                e.setWins(s.wins.sum());
+                e.setLastWinAt(s.lastWinAt);
+                changed.add(e);
+                flushed.add(s);
+            });
+            if (changed.isEmpty()) return;
+            try {
+                repo.saveAll(changed);
+            } catch (Exception ex) {
+                for (Stat s : flushed) s.dirty.set(true);
+                log.warn("Failed to persist {} barcode variant stats: {}", changed.size(), ex.toString());
+            }
+        }
+    }
+
+    public BarcodeDtos.VariantStatsResponse snapshot() {
+        BarcodeDtos.VariantStatsResponse r = new BarcodeDtos.VariantStatsResponse();
+        r.frozen = frozen;
+        List<BarcodeDtos.VariantStat> ranking = new ArrayList<>();
+        stats.forEach((key, s) -> {
+            BarcodeDtos.VariantStat v = new BarcodeDtos.VariantStat();
+            v.variant = key;
+            v.wins = s.wins.sum();
+            v.lastWinAt = s.lastWinAt;
+            ranking.add(v);
+        });
+        ranking.sort(Comparator.comparingLong((BarcodeDtos.VariantStat v) -> v.wins).reversed()
+                .thenComparing(v -> v.variant));
+        r.ranking = ranking;
+        r.totalWins = ranking.stream().mapToLong(s -> s.wins).sum();
+        return r;
+    }
+
+    public BarcodeDtos.VariantStatsResponse freeze() {
+        frozen = true;
+        return snapshot();
+    }
+
+    public BarcodeDtos.VariantStatsResponse unfreeze() {
+        frozen = false;
+        return snapshot();
+    }
+
+    public BarcodeDtos.VariantStatsResponse reset() {
+        synchronized (flushLock) {
+            repo.deleteAllInBatch();
+            stats.clear();
+        }
+        return snapshot();
+    }
+
+    private long wins(String variantKey) {
+        Stat s = stats.get(variantKey);
+        return s == null ? 0 : s.wins.sum();
+    }
+}
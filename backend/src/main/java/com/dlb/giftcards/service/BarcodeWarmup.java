@@ -0,0 +1,231 @@
+package com.dlb.giftcards.service;
+
+import com.dlb.giftcards.dto.BarcodeDtos;
+import com.dlb.giftcards.exception.BarcodeNotFoundException;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.oned.Code128Writer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Opt-in startup warm-up for the barcode decoder (APP_BARCODE_WARMUP_ENABLED). Once the application is up it
+ * loads the OpenCV natives eagerly, then decodes a synthetic card through the OpenCV and Java2D pipelines a
+ * few times so the first real requests do not pay for native extraction and interpreted hot loops.
+ * <p>
+ * Exposed as the {@code barcodeWarmup} health contributor, which is part of the readiness group: the pod
+ * reports OUT_OF_SERVICE until the warm-up has finished. A failed warm-up still reports UP (requests work,
+ * they are just slow at first); the OpenCV load outcome and per-path timings are in the health details.
+ * <p>
+ * The warm-up drives the {@link BarcodeDecodeService} bean that serves traffic, so it exercises exactly the
+ * configured pipeline (parallelism, localization, pyramid, rectification, row scan) and decode pool. It calls
+ * the two pipelines below the cache, bulkhead and request-level meters, and its runs do not learn, so the
+ * variant ordering is untouched; the per-stage timers do include the warm-up decodes.
+ */
+@Component
+public class BarcodeWarmup implements HealthIndicator {
+
+    private static final Logger log = LoggerFactory.getLogger(BarcodeWarmup.class);
+
+    private static final String PENDING = "pending";
+    private static final String RUNNING = "running";
+    private static final String DONE = "done";
+    private static final String FAILED = "failed";
+    private static final String DISABLED = "disabled";
+
+    private static final String WARMUP_TEXT = "6006491700012345678";
+
+    private final boolean enabled;
+    private final int iterations;
+    private final BarcodeDecodeService decodeService;
+
+    private volatile String state;
+    private volatile String error;
+    private volatile Long opencvLoadMs;
+    private final Map<String, PathTimings> timings = new LinkedHashMap<>();
+
+    public BarcodeWarmup(
+            BarcodeDecodeService decodeService,
+            @Value("${APP_BARCODE_WARMUP_ENABLED:false}") boolean enabled,
+            @Value("${APP_BARCODE_WARMUP_ITERATIONS:10}") int iterations
+    ) {
+        this.decodeService = decodeService;
+        this.enabled = enabled;
+        this.iterations = Math.max(1, iterations);
+        this.state = enabled ? PENDING : DISABLED;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void start() {
+        if (!enabled) return;
+        Thread t = new Thread(this::run, "barcode-warmup");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    @Override
+    public Health health() {
+        String s = state;
+        Health.Builder b = PENDING.equals(s) || RUNNING.equals(s) ? Health.outOfService() : Health.up();
+        b.withDetail("enabled", enabled).withDetail("state", s);
+        b.withDetail("opencvLoaded", BarcodeDecodeService.openCvLoaded());
+        String loadError = BarcodeDecodeService.openCvLoadError();
+        if (loadError != null) b.withDetail("opencvLoadError", loadError);
+        if (opencvLoadMs != null) b.withDetail("opencvLoadMs", opencvLoadMs);
+        synchronized (timings) {
+            for (Map.Entry<String, PathTimings> e : timings.entrySet()) b.withDetail(e.getKey(), e.getValue().view());
+        }
+        if (error != null) b.withDetail("error", error);
+        return b.build();
+    }
+
+    private void run() {
+        state = RUNNING;
+        long start = System.nanoTime();
+        try {
+            long loadStart = System.nanoTime();
+            boolean opencv = BarcodeDecodeService.tryLoadOpenCv();
+            opencvLoadMs = (System.nanoTime() - loadStart) / 1_000_000;
+            if (!opencv) {
+                log.warn("OpenCV natives failed to load, barcode decoding will use Java2D only: {}",
+                        BarcodeDecodeService.openCvLoadError());
+            }
+
+            List<byte[]> cards = List.of(card(0.0, 0), card(7.0, 24));
+            if (opencv) warm("opencv", cards, true);
+            warm("java2d", cards, false);
+
+            state = DONE;
+            log.info("Barcode decode warm-up finished in {} ms (opencv={})", (System.nanoTime() - start) / 1_000_000, opencv);
+        } catch (Throwable t) {
+            error = t.toString();
+            state = FAILED;
+            log.warn("Barcode decode warm-up failed: {}", t.toString());
+        }
+    }
+
+    private void warm(String path, List<byte[]> cards, boolean opencv) throws Exception {
+        PathTimings pt = new PathTimings();
+        synchronized (timings) {
+            timings.put(path, pt);
+        }
+        for (int i = 0; i < iterations; i++) {
+            byte[] card = cards.get(i % cards.size());
+            // Same budget as a request without overrides; learn=false keeps the synthetic wins out of the ordering.
+            BarcodeDecodeService.DecodeRun run = new BarcodeDecodeService.DecodeRun(false,
+                    new BarcodeDtos.DecodeBarcodeResponse(), decodeService.newBudget(BarcodeDecodeService.DecodeLimits.DEFAULT), false);
+            long t0 = System.nanoTime();
+            String text;
+            try {
+                text = opencv
+                        ? decodeService.decodeWithOpenCv(BarcodeDecodeService.newCode128Reader(), card, ImageIngest.header(card), run)
+                        : decodeService.decodeWithJava2D(BarcodeDecodeService.newCode128Reader(), card, ImageIngest.header(card), run);
+            } catch (NotFoundException | BarcodeNotFoundException e) {
+                text = null;
+            }
+            pt.record((System.nanoTime() - t0) / 1_000_000, WARMUP_TEXT.equals(text));
+        }
+    }
+
+    /**
+     * A plain card with a Code 128 serial, optionally tilted and grainy so the search goes past the first
+     * variant. No text is drawn: slim runtime images often ship without fonts, and a missing fontconfig
+     * would fail the warm-up for reasons that have nothing to do with decoding.
+     */
+    private static byte[] card(double angleDeg, int noise) {
+        BitMatrix bars = new Code128Writer().encode(WARMUP_TEXT, BarcodeFormat.CODE_128, 720, 150);
+        int w = 1280;
+        int h = 800;
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(new Color(196, 212, 232));
+        g.fillRect(0, 0, w, h);
+        g.setColor(new Color(40, 60, 90));
+        g.fillRect(90, 90, 420, 50);
+        g.fillRect(90, 170, 560, 24);
+
+        AffineTransform at = new AffineTransform();
+        at.translate(w / 2.0, h * 0.64);
+        at.rotate(Math.toRadians(angleDeg));
+        at.translate(-bars.getWidth() / 2.0, -bars.getHeight() / 2.0);
+        g.setTransform(at);
+        g.setColor(Color.WHITE);
+        g.fillRect(-30, -24, bars.getWidth() + 60, bars.getHeight() + 48);
+        g.setColor(Color.BLACK);
+        for (int x = 0; x < bars.getWidth(); x++) {
+            if (bars.get(x, 0)) g.fillRect(x, 0, 1, bars.getHeight());
+        }
+        g.dispose();
+
+        if (noise > 0) {
+            Random random = new Random(0x5EED);
+            for (int y = 0; y < h; y++) {
+                for (int x = 0; x < w; x++) {
+                    int rgb = img.getRGB(x, y);
+                    int n = (int) Math.round(random.nextGaussian() * noise);
+                    img.setRGB(x, y, (clamp(((rgb >> 16) & 0xFF) + n) << 16)
+                            | (clamp(((rgb >> 8) & 0xFF) + n) << 8) | clamp((rgb & 0xFF) + n));
+                }
+            }
+        }
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (!ImageIO.write(img, "jpg", out)) throw new IllegalStateException("No JPEG writer");
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int clamp(int v) {
+        return Math.max(0, Math.min(255, v));
+    }
+
+    /** Per-path warm-up timings; the first decode shows the cold cost, the last one the warmed-up cost. */
+    private static final class PathTimings {
+        private int runs;
+        private int decoded;
+        private long firstMs = -1;
+        private long lastMs;
+        private long totalMs;
+
+        synchronized void record(long ms, boolean ok) {
+            if (runs == 0) firstMs = ms;
+            runs++;
+            if (ok) decoded++;
+            lastMs = ms;
+            totalMs += ms;
+        }
+
+        synchronized Map<String, Object> view() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("iterations", runs);
+            m.put("decoded", decoded);
+            m.put("firstMs", firstMs);
+            m.put("lastMs", lastMs);
+            m.put("totalMs", totalMs);
+            return m;
+        }
+    }
+}
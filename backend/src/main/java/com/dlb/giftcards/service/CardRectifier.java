@@ -0,0 +1,259 @@
+package com.dlb.giftcards.service;
+
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Turns a tilted, keystoned card photo into one square-on image with vertical bars, so a handful of
+ * rotation-0 attempts can stand in for the blind rotation grid.
+ * <p>
+ * Two estimates on a downscaled copy, then a single warpPerspective at full resolution:
+ * <ol>
+ *   <li>the card outline: the largest convex quadrilateral in the Canny edge map (approxPolyDP), mapped
+ *       onto an upright rectangle to undo perspective;</li>
+ *   <li>the dominant bar direction in the rectified copy: the peak of a magnitude-weighted gradient
+ *       orientation histogram (the bar normal), rotated to horizontal so the bars stand vertical.</li>
+ * </ol>
+ * Either estimate may be missing (no card edge in frame, no line structure); the image is only rectified
+ * when at least one of them says it is off-axis.
+ */
+final class CardRectifier {
+
+    private static final int WORK_MAX_DIM = 640;
+    // The card must cover this much of the frame; smaller quads are usually labels or printed boxes.
+    private static final double MIN_CARD_FRACTION = 0.15;
+    // A quad this close to the whole frame is the photo border (or an already cropped scan).
+    private static final double MAX_CARD_FRACTION = 0.95;
+    // Residual skew below this is left to ZXing; 1D decoding tolerates a few degrees.
+    private static final double MIN_SKEW_DEG = 2.0;
+    // Sobel magnitude below this is flat background and sensor noise.
+    private static final float MIN_GRADIENT = 40f;
+    // The +-2 degree peak must hold this much of the gradient energy to count as a bar direction.
+    private static final double MIN_PEAK_SHARE = 0.12;
+    // Pooled views sit in larger blocks whose pixels past the view's edge are stale; filters must not read them.
+    private static final int ISOLATED = Core.BORDER_DEFAULT | Core.BORDER_ISOLATED;
+
+    /** mat is borrowed from the arena; quad tells whether perspective was corrected, angle is the applied turn. */
+    record Rectified(Mat mat, boolean quad, double angleDeg) {
+    }
+
+    private CardRectifier() {
+    }
+
+    /**
+     * Pool bytes one rectification holds at most: the work-size planes (four 8-bit, four float) while it
+     * measures, plus the rectified card and the blurred copy its attempts add, each at most maxDim square.
+     */
+    static long workingBytes(int maxDim) {
+        return 20L * WORK_MAX_DIM * WORK_MAX_DIM + 2L * maxDim * maxDim;
+    }
+
+    /**
+     * Rectified copy of gray capped at maxDim, or null when the image already looks square-on.
+     * Image-sized intermediates are borrowed from the arena (so the pool's limits cover them) and given back
+     * before returning; only 3x3 transforms and other small headers are plain Mats.
+     */
+    static Rectified rectify(Mat gray, int maxDim, NativeMatPool.Arena arena) {
+        List<Mat> temps = new ArrayList<>();
+        List<Mat> borrowed = new ArrayList<>();
+        try {
+            double f = Math.min(1.0, (double) WORK_MAX_DIM / Math.max(gray.cols(), gray.rows()));
+            int sw = Math.max(1, (int) (gray.cols() * f));
+            int sh = Math.max(1, (int) (gray.rows() * f));
+            Mat small = track(borrowed, arena.borrow(sh, sw, CvType.CV_8UC1));
+            Imgproc.resize(gray, small, new Size(sw, sh), 0, 0, Imgproc.INTER_AREA);
+
+            // Full-resolution homography onto an upright card (identity when no card outline was found).
+            Point[] quad = findCard(small, temps, borrowed, arena);
+            Mat h;
+            Size rectSize;
+            if (quad != null) {
+                for (Point p : quad) {
+                    p.x /= f;
+                    p.y /= f;
+                }
+                double w = Math.max(dist(quad[0], quad[1]), dist(quad[3], quad[2]));
+                double ht = Math.max(dist(quad[0], quad[3]), dist(quad[1], quad[2]));
+                rectSize = new Size(Math.max(1, Math.round(w)), Math.max(1, Math.round(ht)));
+                h = track(temps, Imgproc.getPerspectiveTransform(
+                        track(temps, new MatOfPoint2f(quad)),
+                        track(temps, new MatOfPoint2f(new Point(0, 0), new Point(rectSize.width, 0),
+                                new Point(rectSize.width, rectSize.height), new Point(0, rectSize.height)))));
+            } else {
+                rectSize = gray.size();
+                h = track(temps, Mat.eye(3, 3, CvType.CV_64F));
+            }
+
+            // Bar direction is measured on a work-size copy of the rectified card (uniform scale keeps angles).
+            double g = Math.min(1.0, (double) WORK_MAX_DIM / Math.max(rectSize.width, rectSize.height));
+            Mat scale = track(temps, scaling(g));
+            Mat toWork = track(temps, scale.matMul(h));
+            int ww = (int) Math.max(1, Math.round(rectSize.width * g));
+            int wh = (int) Math.max(1, Math.round(rectSize.height * g));
+            Mat work = track(borrowed, arena.borrow(wh, ww, CvType.CV_8UC1));
+            Imgproc.warpPerspective(gray, work, toWork, new Size(ww, wh), Imgproc.INTER_AREA, Core.BORDER_REPLICATE);
+            double turn = barSkew(work, borrowed, arena);
+            if (Math.abs(turn) < MIN_SKEW_DEG) turn = 0;
+            if (quad == null && turn == 0) return null;
+
+            // Rotate about the card center onto a canvas that holds the whole turned card, then cap the size.
+            double rad = Math.toRadians(turn);
+            double cos = Math.abs(Math.cos(rad));
+            double sin = Math.abs(Math.sin(rad));
+            double ow = rectSize.width * cos + rectSize.height * sin;
+            double oh = rectSize.width * sin + rectSize.height * cos;
+            double fit = Math.min(1.0, maxDim / Math.max(ow, oh));
+            Mat rot = track(temps, Imgproc.getRotationMatrix2D(new Point(rectSize.width / 2.0, rectSize.height / 2.0), turn, fit));
+            int outW = Math.max(1, (int) Math.round(ow * fit));
+            int outH = Math.max(1, (int) Math.round(oh * fit));
+            rot.put(0, 2, rot.get(0, 2)[0] + outW / 2.0 - rectSize.width / 2.0);
+            rot.put(1, 2, rot.get(1, 2)[0] + outH / 2.0 - rectSize.height / 2.0);
+            Mat rot3 = track(temps, Mat.eye(3, 3, CvType.CV_64F));
+            Mat rot3Top = track(temps, rot3.rowRange(0, 2));
+            rot.copyTo(rot3Top);
+
+            // Corners uncovered by the turn get a flat fill; replicated borders would smear into fake bars.
+            Mat out = arena.borrow(outH, outW, CvType.CV_8UC1);
+            Imgproc.warpPerspective(gray, out, track(temps, rot3.matMul(h)), new Size(outW, outH),
+                    Imgproc.INTER_LINEAR, Core.BORDER_CONSTANT, Core.mean(gray));
+            return new Rectified(out, quad != null, turn);
+        } finally {
+            for (Mat m : temps) m.release();
+            for (Mat m : borrowed) arena.giveBack(m);
+        }
+    }
+
+    /** Corners tl, tr, br, bl of the largest plausible card outline in small, or null. */
+    private static Point[] findCard(Mat small, List<Mat> temps, List<Mat> borrowed, NativeMatPool.Arena arena) {
+        Mat edges = track(borrowed, arena.borrowLike(small));
+        Imgproc.GaussianBlur(small, edges, new Size(5, 5), 0, 0, ISOLATED);
+        Imgproc.Canny(edges, edges, 40, 120);
+        Mat kernel = track(temps, Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(3, 3)));
+        Imgproc.dilate(edges, edges, kernel, new Point(-1, -1), 1, Core.BORDER_CONSTANT | Core.BORDER_ISOLATED, new Scalar(0));
+
+        List<MatOfPoint> contours = new ArrayList<>();
+        Imgproc.findContours(edges, contours, track(temps, new Mat()), Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+        double frame = (double) small.cols() * small.rows();
+        contours.sort(Comparator.comparingDouble((MatOfPoint c) -> Imgproc.contourArea(c)).reversed());
+        try {
+            for (MatOfPoint c : contours) {
+                double area = Imgproc.contourArea(c);
+                if (area < MIN_CARD_FRACTION * frame) break;
+                if (area > MAX_CARD_FRACTION * frame) continue;
+                MatOfPoint2f c2f = new MatOfPoint2f(c.toArray());
+                MatOfPoint2f approx = new MatOfPoint2f();
+                try {
+                    Imgproc.approxPolyDP(c2f, approx, 0.02 * Imgproc.arcLength(c2f, true), true);
+                    if (approx.rows() != 4) continue;
+                    MatOfPoint poly = new MatOfPoint(approx.toArray());
+                    boolean convex = Imgproc.isContourConvex(poly);
+                    poly.release();
+                    if (convex) return order(approx.toArray());
+                } finally {
+                    c2f.release();
+                    approx.release();
+                }
+            }
+            return null;
+        } finally {
+            for (MatOfPoint c : contours) c.release();
+        }
+    }
+
+    /**
+     * Degrees to turn (counter-clockwise, OpenCV convention) so the bars become vertical; 0 when there is
+     * no clear dominant direction. Bars put most of the image's gradient energy across them, so the peak of
+     * a magnitude-weighted gradient orientation histogram is the bar normal. Edge-based line detection is
+     * misled here: the aligned bar ends form long lines perpendicular to the bars.
+     */
+    private static double barSkew(Mat work, List<Mat> borrowed, NativeMatPool.Arena arena) {
+        int rows = work.rows();
+        int cols = work.cols();
+        Mat smooth = track(borrowed, arena.borrowLike(work));
+        Imgproc.GaussianBlur(work, smooth, new Size(5, 5), 0, 0, ISOLATED);
+        Mat gx = track(borrowed, arena.borrow(rows, cols, CvType.CV_32F));
+        Mat gy = track(borrowed, arena.borrow(rows, cols, CvType.CV_32F));
+        Imgproc.Sobel(smooth, gx, CvType.CV_32F, 1, 0, 3, 1, 0, ISOLATED);
+        Imgproc.Sobel(smooth, gy, CvType.CV_32F, 0, 1, 3, 1, 0, ISOLATED);
+        Mat mag = track(borrowed, arena.borrow(rows, cols, CvType.CV_32F));
+        Mat dir = track(borrowed, arena.borrow(rows, cols, CvType.CV_32F));
+        Core.cartToPolar(gx, gy, mag, dir, true);
+        int n = (int) mag.total();
+        float[] m = new float[n];
+        float[] d = new float[n];
+        // Pooled views are not continuous, so no reshape(1, 1); get copies a view out row by row.
+        mag.get(0, 0, m);
+        dir.get(0, 0, d);
+
+        // Gradient directions folded into [0, 180), one bin per degree; weak gradients are sensor noise.
+        double[] hist = new double[180];
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            if (m[i] < MIN_GRADIENT) continue;
+            double e = (double) m[i] * m[i];
+            hist[(int) d[i] % 180] += e;
+            total += e;
+        }
+        if (total == 0) return 0;
+        int peak = 0;
+        double best = 0;
+        for (int b = 0; b < 180; b++) {
+            // Smooth over +-2 degrees so a direction split across bins still wins.
+            double s = 0;
+            for (int k = -2; k <= 2; k++) s += hist[(b + k + 180) % 180];
+            if (s > best) {
+                best = s;
+                peak = b;
+            }
+        }
+        // A flat histogram (text, texture, no barcode) has no direction worth turning to.
+        if (best < MIN_PEAK_SHARE * total) return 0;
+        // Weighted mean inside the peak window refines the 1-degree bin.
+        double sum = 0;
+        double weight = 0;
+        for (int k = -2; k <= 2; k++) {
+            double w = hist[(peak + k + 180) % 180];
+            sum += (peak + k) * w;
+            weight += w;
+        }
+        double normal = sum / weight;
+        // Image y points down, so a gradient at angle a (clockwise from +x) becomes horizontal, and the bars
+        // vertical, after a counter-clockwise turn of a; keep the smaller of the two equivalent turns.
+        double turn = normal;
+        if (turn > 90) turn -= 180;
+        if (turn < -90) turn += 180;
+        return turn;
+    }
+
+    /** tl, tr, br, bl: smallest x+y is top-left, largest is bottom-right, y-x picks the other two. */
+    private static Point[] order(Point[] p) {
+        Point tl = p[0], tr = p[0], br = p[0], bl = p[0];
+        for (Point q : p) {
+            if (q.x + q.y < tl.x + tl.y) tl = q;
+            if (q.x + q.y > br.x + br.y) br = q;
+            if (q.y - q.x < tr.y - tr.x) tr = q;
+            if (q.y - q.x > bl.y - bl.x) bl = q;
+        }
+        return new Point[]{tl.clone(), tr.clone(), br.clone(), bl.clone()};
+    }
+
+    private static Mat scaling(double s) {
+        Mat m = Mat.eye(3, 3, CvType.CV_64F);
+        m.put(0, 0, s);
+        m.put(1, 1, s);
+        return m;
+    }
+
+    private static double dist(Point a, Point b) {
+        return Math.hypot(a.x - b.x, a.y - b.y);
+    }
+
+    private static <T extends Mat> T track(List<Mat> temps, T m) {
+        temps.add(m);
+        return m;
+    }
+}
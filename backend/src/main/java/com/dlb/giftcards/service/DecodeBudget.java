@@ -0,0 +1,57 @@
+package com.dlb.giftcards.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-request limit on barcode search work: a wall-clock deadline and a maximum number of attempts.
+ * Loops ask for a slot before every attempt; once either limit is hit the budget stays cut off.
+ * Safe to share between decode pool workers.
+ */
+final class DecodeBudget {
+
+    private final long startNanos;
+    private final long deadlineNanos;
+    private final int maxAttempts;
+    private final AtomicInteger used = new AtomicInteger();
+    private volatile boolean cutOff;
+
+    DecodeBudget(long timeoutMs, int maxAttempts) {
+        this.startNanos = System.nanoTime();
+        this.deadlineNanos = startNanos + timeoutMs * 1_000_000L;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /** Claims one attempt; false (and cut off from then on) when out of time or attempts. */
+    boolean tryAcquire() {
+        if (expired()) return false;
+        if (used.incrementAndGet() > maxAttempts) {
+            used.decrementAndGet();
+            cutOff = true;
+            return false;
+        }
+        return true;
+    }
+
+    /** Deadline check for work between attempts (e.g. building variants). */
+    boolean expired() {
+        if (cutOff) return true;
+        if (System.nanoTime() - deadlineNanos > 0) cutOff = true;
+        return cutOff;
+    }
+
+    boolean cutOff() {
+        return cutOff;
+    }
+
+    int used() {
+        return used.get();
+    }
+
+    long remainingMs() {
+        return Math.max(0, (deadlineNanos - System.nanoTime()) / 1_000_000L);
+    }
+
+    long elapsedMs() {
+        return (System.nanoTime() - startNanos) / 1_000_000L;
+    }
+}
@@ -0,0 +1,211 @@
+package com.dlb.giftcards.service;
+
+import com.dlb.giftcards.dto.BarcodeDtos;
+import com.dlb.giftcards.exception.DecoderBusyException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control in front of the decode pipelines. A decode needs a permit and room in a memory budget
+ * for its estimated working set (see {@link BarcodeDecodeService#estimateWorkingBytes}), checked before any
+ * image is decoded. Callers that do not fit wait in a short FIFO queue; when the queue is full or the wait
+ * runs out they get a {@link DecoderBusyException} (503) instead of pushing the process into an OOM kill.
+ * <p>
+ * That fail-fast is for interactive requests. Background work (decode jobs, batch items, task artifacts)
+ * already waits in its own bounded queue and has nobody to hand a 503 to, so it takes
+ * {@link #acquireBackground}: same FIFO line, but no wait limit and no slot in the interactive queue.
+ * <p>
+ * This is coarser than {@link NativeMatPool}'s high-water mark, which only sees pooled Mats once a decode
+ * is already running and holding its decoded image. A decode is always admitted when nothing else is in
+ * flight, so an image larger than the whole budget is slow rather than impossible.
+ */
+@Component
+public class DecodeBulkhead {
+
+    // Retry-After guess before any decode has released its permit.
+    private static final long DEFAULT_HOLD_MS = 1000;
+    private static final long MAX_RETRY_AFTER_SECONDS = 60;
+
+    private final int permits;
+    private final long memoryBudgetBytes;
+    private final int queueCapacity;
+    private final long maxWaitMs;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    // Waiting callers in arrival order; only the head may be admitted, so a big image is not starved by small ones.
+    private final ArrayDeque<Object> waiting = new ArrayDeque<>();
+
+    // Background callers in waiting; they do not count against queueCapacity.
+    private int backgroundWaiting;
+    private int inFlight;
+    private long inFlightBytes;
+    private long peakInFlightBytes;
+    private long admitted;
+    private long waited;
+    private long rejectedQueueFull;
+    private long rejectedTimeout;
+    private long totalWaitMs;
+    private long released;
+    private long totalHoldMs;
+
+    public DecodeBulkhead(
+            @Value("${APP_BARCODE_BULKHEAD_PERMITS:4}") int permits,
+            @Value("${APP_BARCODE_BULKHEAD_MEMORY_BYTES:536870912}") long memoryBudgetBytes,
+            @Value("${APP_BARCODE_BULKHEAD_QUEUE_CAPACITY:16}") int queueCapacity,
+            @Value("${APP_BARCODE_BULKHEAD_MAX_WAIT_MS:2000}") long maxWaitMs
+    ) {
+        this.permits = Math.max(1, permits);
+        this.memoryBudgetBytes = Math.max(1, memoryBudgetBytes);
+        this.queueCapacity = Math.max(0, queueCapacity);
+        this.maxWaitMs = Math.max(0, maxWaitMs);
+    }
+
+    /**
+     * Takes a permit for a decode expected to need estimatedBytes, waiting up to APP_BARCODE_BULKHEAD_MAX_WAIT_MS.
+     * Close the returned permit when the decode is done.
+     */
+    public Permit acquire(long estimatedBytes) {
+        return acquire(estimatedBytes, false);
+    }
+
+    /**
+     * Takes a permit for background work, waiting as long as it takes. Only for callers whose own queue is
+     * already bounded; the number of such waiters is then bounded by their worker threads.
+     */
+    public Permit acquireBackground(long estimatedBytes) {
+        return acquire(estimatedBytes, true);
+    }
+
+    private Permit acquire(long estimatedBytes, boolean background) {
+        long bytes = Math.max(0, estimatedBytes);
+        lock.lock();
+        try {
+            if (waiting.isEmpty() && fits(bytes)) return admit(bytes, 0);
+            if (!background && waiting.size() - backgroundWaiting >= queueCapacity) {
+                rejectedQueueFull++;
+                throw new DecoderBusyException("Barcode decoder is busy; try again shortly", retryAfterSeconds());
+            }
+
+            Object ticket = new Object();
+            waiting.addLast(ticket);
+            if (background) backgroundWaiting++;
+            waited++;
+            long start = System.nanoTime();
+            long remaining = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+            try {
+                while (waiting.peekFirst() != ticket || !fits(bytes)) {
+                    if (background) {
+                        changed.await();
+                        continue;
+                    }
+                    if (remaining <= 0) {
+                        rejectedTimeout++;
+                        throw new DecoderBusyException("Barcode decoder is busy; try again shortly", retryAfterSeconds());
+                    }
+                    remaining = changed.awaitNanos(remaining);
+                }
+            } finally {
+                waiting.remove(ticket);
+                if (background) backgroundWaiting--;
+                // The next waiter may be the new head, or may fit now that this one gave up.
+                changed.signalAll();
+            }
+            return admit(bytes, (System.nanoTime() - start) / 1_000_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the barcode decoder", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public BarcodeDtos.DecodeBulkheadStats stats() {
+        lock.lock();
+        try {
+            BarcodeDtos.DecodeBulkheadStats s = new BarcodeDtos.DecodeBulkheadStats();
+            s.permits = permits;
+            s.inFlight = inFlight;
+            s.memoryBudgetBytes = memoryBudgetBytes;
+            s.inFlightBytes = inFlightBytes;
+            s.peakInFlightBytes = peakInFlightBytes;
+            s.waiting = waiting.size();
+            s.backgroundWaiting = backgroundWaiting;
+            s.queueCapacity = queueCapacity;
+            s.maxWaitMs = maxWaitMs;
+            s.admitted = admitted;
+            s.waited = waited;
+            s.rejectedQueueFull = rejectedQueueFull;
+            s.rejectedTimeout = rejectedTimeout;
+            s.avgWaitMs = admitted == 0 ? 0 : totalWaitMs / admitted;
+            s.avgHoldMs = avgHoldMs();
+            return s;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Callers hold the lock for everything below.
+
+    private boolean fits(long bytes) {
+        if (inFlight >= permits) return false;
+        return inFlight == 0 || inFlightBytes + bytes <= memoryBudgetBytes;
+    }
+
+    private Permit admit(long bytes, long waitMs) {
+        inFlight++;
+        inFlightBytes += bytes;
+        peakInFlightBytes = Math.max(peakInFlightBytes, inFlightBytes);
+        admitted++;
+        totalWaitMs += waitMs;
+        return new Permit(bytes);
+    }
+
+    private long retryAfterSeconds() {
+        long ms = (waiting.size() + 1) * avgHoldMs() / permits;
+        return Math.max(1, Math.min(MAX_RETRY_AFTER_SECONDS, (ms + 999) / 1000));
+    }
+
+    private long avgHoldMs() {
+        return released == 0 ? DEFAULT_HOLD_MS : totalHoldMs / released;
+    }
+
+    private void release(Permit p) {
+        lock.lock();
+        try {
+            inFlight--;
+            inFlightBytes -= p.bytes;
+            released++;
+            totalHoldMs += (System.nanoTime() - p.startNanos) / 1_000_000;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** One admitted decode; closing it (once) gives the permit and its bytes back. */
+    public final class Permit implements AutoCloseable {
+
+        private final long bytes;
+        private final long startNanos = System.nanoTime();
+        private boolean closed;
+
+        private Permit(long bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (closed) return;
+                closed = true;
+            }
+            release(this);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.dlb.giftcards.service;
+
+import com.google.zxing.LuminanceSource;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Luminance source over a plain 8-bit grayscale plane.
+ * <p>
+ * The backing array may be longer than the plane (it is often a reused per-thread buffer);
+ * only the first {@code dataWidth * dataHeight} bytes are meaningful.
+ */
+final class GrayLuminanceSource extends LuminanceSource {
+
+    private final byte[] data;
+    private final int dataWidth;
+    private final int dataHeight;
+    private final int left;
+    private final int top;
+
+    GrayLuminanceSource(byte[] data, int dataWidth, int dataHeight) {
+        this(data, dataWidth, dataHeight, 0, 0, dataWidth, dataHeight);
+    }
+
+    private GrayLuminanceSource(byte[] data, int dataWidth, int dataHeight, int left, int top, int width, int height) {
+        super(width, height);
+        if (left + width > dataWidth || top + height > dataHeight) {
+            throw new IllegalArgumentException("Crop rectangle does not fit within image data");
+        }
+        if ((long) dataWidth * dataHeight > data.length) {
+            throw new IllegalArgumentException("Luminance buffer is smaller than the plane");
+        }
+        this.data = data;
+        this.dataWidth = dataWidth;
+        this.dataHeight = dataHeight;
+        this.left = left;
+        this.top = top;
+    }
+
+    /**
+     * Copies the Mat's pixels as grayscale into {@code buffer} (grown when too small) with a single {@code Mat.get}.
+     * Three- and four-channel mats are converted with {@code cvtColor} first.
+     */
+    static GrayLuminanceSource fromMat(Mat mat, byte[] buffer) {
+        int w = mat.cols();
+        int h = mat.rows();
+        int len = w * h;
+        byte[] data = buffer != null && buffer.length >= len ? buffer : new byte[len];
+
+        if (mat.type() == CvType.CV_8UC1) {
+            mat.get(0, 0, data);
+            return new GrayLuminanceSource(data, w, h);
+        }
+
+        Mat gray = new Mat();
+        try {
+            Imgproc.cvtColor(mat, gray, mat.channels() == 4 ? Imgproc.COLOR_BGRA2GRAY : Imgproc.COLOR_BGR2GRAY);
+            gray.get(0, 0, data);
+        } finally {
+            gray.release();
+        }
+        return new GrayLuminanceSource(data, w, h);
+    }
+
+    byte[] buffer() {
+        return data;
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        if (y < 0 || y >= getHeight()) {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+        int width = getWidth();
+        if (row == null || row.length < width) {
+            row = new byte[width];
+        }
+        System.arraycopy(data, (y + top) * dataWidth + left, row, 0, width);
+        return row;
+    }
+
+    @Override
+    public byte[] getMatrix() {
+        int width = getWidth();
+        int height = getHeight();
+
+        // Full-frame view: readers only index the first width*height bytes, so hand out the buffer as-is.
+        if (width == dataWidth && height == dataHeight) {
+            return data;
+        }
+
+        byte[] matrix = new byte[width * height];
+        int offset = top * dataWidth + left;
+        if (width == dataWidth) {
+            System.arraycopy(data, offset, matrix, 0, width * height);
+            return matrix;
+        }
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(data, offset, matrix, y * width, width);
+            offset += dataWidth;
+        }
+        return matrix;
+    }
+
+    @Override
+    public boolean isCropSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource crop(int left, int top, int width, int height) {
+        return new GrayLuminanceSource(data, dataWidth, dataHeight, this.left + left, this.top + top, width, height);
+    }
+
+    @Override
+    public boolean isRotateSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource rotateCounterClockwise() {
+        int width = getWidth();
+        int height = getHeight();
+        byte[] rotated = new byte[width * height];
+        // Source (x, y) lands at (y, width - 1 - x) in the rotated plane, which is height pixels wide.
+        for (int y = 0; y < height; y++) {
+            int srcRow = (y + top) * dataWidth + left;
+            for (int x = 0; x < width; x++) {
+                rotated[(width - 1 - x) * height + y] = data[srcRow + x];
+            }
+        }
+        return new GrayLuminanceSource(rotated, height, width);
+    }
+}
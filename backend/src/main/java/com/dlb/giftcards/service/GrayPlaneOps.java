@@ -0,0 +1,104 @@
+package com.dlb.giftcards.service;
+
+/**
+ * Point operations on 8-bit grayscale planes (one unsigned byte per pixel) for the Java2D fallback.
+ * <p>
+ * When the JVM runs with {@code --add-modules jdk.incubator.vector} the per-pixel loops go through
+ * {@link GrayPlaneVectorOps}; otherwise the scalar loops below are used. Both produce identical bytes.
+ */
+final class GrayPlaneOps {
+
+    // Only touch GrayPlaneVectorOps when the module is resolved, so its class never loads without it.
+    static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    // Contrast factor is applied in Q7 fixed point so the vector and scalar paths agree exactly.
+    static final int CONTRAST_SHIFT = 7;
+
+    private GrayPlaneOps() {
+    }
+
+    /** dst[i] = clamp(((src[i] - 128) * factor) + 128) for the first len pixels. */
+    static void contrast(byte[] src, byte[] dst, int len, float factor) {
+        int fx = contrastFixed(factor);
+        // The vector path multiplies in 16-bit lanes, which holds for factors below 2.0.
+        if (VECTORIZED && Math.abs(fx) < 256) {
+            GrayPlaneVectorOps.contrast(src, dst, len, fx);
+            return;
+        }
+        byte[] lut = new byte[256];
+        for (int v = 0; v < 256; v++) {
+            lut[v] = (byte) clamp((((v - 128) * fx) >> CONTRAST_SHIFT) + 128);
+        }
+        for (int i = 0; i < len; i++) {
+            dst[i] = lut[src[i] & 0xFF];
+        }
+    }
+
+    /** dst[i] = 255 where src[i] >= level, else 0. */
+    static void threshold(byte[] src, byte[] dst, int len, int level) {
+        if (VECTORIZED) {
+            GrayPlaneVectorOps.threshold(src, dst, len, level);
+            return;
+        }
+        // Branch-free: (level - 1 - v) is negative exactly when v >= level, and >> 31 turns that into all ones.
+        for (int i = 0; i < len; i++) {
+            dst[i] = (byte) ((level - 1 - (src[i] & 0xFF)) >> 31);
+        }
+    }
+
+    /**
+     * Otsu's global threshold: the level that maximizes between-class variance of the histogram.
+     * Returned as the first value of the bright class, ready for {@link #threshold}.
+     */
+    static int otsuLevel(byte[] src, int len) {
+        int[] hist = histogram(src, len);
+        long sumAll = 0;
+        for (int v = 0; v < 256; v++) sumAll += (long) v * hist[v];
+
+        long weightBg = 0;
+        long sumBg = 0;
+        double best = -1;
+        int level = 128;
+        for (int t = 0; t < 256; t++) {
+            weightBg += hist[t];
+            if (weightBg == 0) continue;
+            long weightFg = len - weightBg;
+            if (weightFg == 0) break;
+            sumBg += (long) t * hist[t];
+            double meanBg = (double) sumBg / weightBg;
+            double meanFg = (double) (sumAll - sumBg) / weightFg;
+            double between = (double) weightBg * weightFg * (meanBg - meanFg) * (meanBg - meanFg);
+            if (between > best) {
+                best = between;
+                level = t + 1;
+            }
+        }
+        return level;
+    }
+
+    /** 256-bin histogram; four interleaved tables avoid the store-to-load stall on runs of equal pixels. */
+    static int[] histogram(byte[] src, int len) {
+        int[] h0 = new int[256];
+        int[] h1 = new int[256];
+        int[] h2 = new int[256];
+        int[] h3 = new int[256];
+        int i = 0;
+        for (; i + 3 < len; i += 4) {
+            h0[src[i] & 0xFF]++;
+            h1[src[i + 1] & 0xFF]++;
+            h2[src[i + 2] & 0xFF]++;
+            h3[src[i + 3] & 0xFF]++;
+        }
+        for (; i < len; i++) h0[src[i] & 0xFF]++;
+        for (int v = 0; v < 256; v++) h0[v] += h1[v] + h2[v] + h3[v];
+        return h0;
+    }
+
+    static int contrastFixed(float factor) {
+        return Math.round(factor * (1 << CONTRAST_SHIFT));
+    }
+
+    private static int clamp(int v) {
+        return Math.max(0, Math.min(255, v));
+    }
+}
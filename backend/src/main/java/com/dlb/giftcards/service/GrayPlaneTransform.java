@@ -0,0 +1,89 @@
+package com.dlb.giftcards.service;
+
+import java.util.Arrays;
+
+/**
+ * Geometric operations on 8-bit grayscale planes for the Java2D fallback: quarter-turn rotation by index
+ * remapping and box-filter resizing. Both read a (x0, y0, w, h) region of a plane with the given row
+ * stride, so a crop never has to be copied out first, and both write a fresh, tightly packed plane.
+ */
+final class GrayPlaneTransform {
+
+    private GrayPlaneTransform() {
+    }
+
+    /**
+     * Rotates the region clockwise by 90, 180 or 270 degrees (the same direction as Graphics2D.rotate with
+     * y pointing down). The result is h x w for quarter turns and w x h for 180.
+     */
+    static byte[] rotate(byte[] src, int stride, int x0, int y0, int w, int h, int rotationDeg) {
+        byte[] dst = new byte[w * h];
+        switch (rotationDeg) {
+            case 90 -> {
+                // Destination row r is source column r, read bottom to top.
+                for (int r = 0; r < w; r++) {
+                    int s = (y0 + h - 1) * stride + x0 + r;
+                    int d = r * h;
+                    for (int c = 0; c < h; c++, s -= stride) dst[d + c] = src[s];
+                }
+            }
+            case 180 -> {
+                for (int r = 0; r < h; r++) {
+                    int s = (y0 + h - 1 - r) * stride + x0 + w - 1;
+                    int d = r * w;
+                    for (int c = 0; c < w; c++) dst[d + c] = src[s - c];
+                }
+            }
+            case 270 -> {
+                // Destination row r is source column w - 1 - r, read top to bottom.
+                for (int r = 0; r < w; r++) {
+                    int s = y0 * stride + x0 + w - 1 - r;
+                    int d = r * h;
+                    for (int c = 0; c < h; c++, s += stride) dst[d + c] = src[s];
+                }
+            }
+            default -> throw new IllegalArgumentException("Unsupported rotation: " + rotationDeg);
+        }
+        return dst;
+    }
+
+    /**
+     * Resizes the region to tw x th. Each target pixel is the rounded mean of the source pixels it covers
+     * (a box filter, which is what downscaling bar patterns wants); when enlarging it degrades to nearest
+     * neighbour. Column sums for one target row are accumulated first, so every source pixel is read once.
+     */
+    static byte[] resizeBox(byte[] src, int stride, int x0, int y0, int w, int h, int tw, int th) {
+        byte[] dst = new byte[tw * th];
+        int[] xs = spans(w, tw);
+        int[] colSum = new int[w];
+        for (int ty = 0; ty < th; ty++) {
+            int ys = (int) ((long) ty * h / th);
+            int ye = Math.max(ys + 1, (int) ((long) (ty + 1) * h / th));
+            Arrays.fill(colSum, 0);
+            for (int y = ys; y < ye; y++) {
+                int row = (y0 + y) * stride + x0;
+                for (int x = 0; x < w; x++) colSum[x] += src[row + x] & 0xFF;
+            }
+            int rows = ye - ys;
+            int d = ty * tw;
+            for (int tx = 0; tx < tw; tx++) {
+                int sum = 0;
+                for (int x = xs[tx]; x < xs[tx + tw]; x++) sum += colSum[x];
+                int count = rows * (xs[tx + tw] - xs[tx]);
+                dst[d + tx] = (byte) ((sum + count / 2) / count);
+            }
+        }
+        return dst;
+    }
+
+    /** Start of each target pixel's source span in [0, n), followed by the (exclusive) ends. */
+    private static int[] spans(int n, int tn) {
+        int[] out = new int[2 * tn];
+        for (int t = 0; t < tn; t++) {
+            int s = (int) ((long) t * n / tn);
+            out[t] = s;
+            out[t + tn] = Math.max(s + 1, (int) ((long) (t + 1) * n / tn));
+        }
+        return out;
+    }
+}
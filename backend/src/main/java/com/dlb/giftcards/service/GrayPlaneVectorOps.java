@@ -0,0 +1,70 @@
+package com.dlb.giftcards.service;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Arrays;
+
+/**
+ * SIMD versions of the {@link GrayPlaneOps} point operations. Only referenced when
+ * {@code jdk.incubator.vector} is in the boot layer; results match the scalar loops byte for byte.
+ */
+final class GrayPlaneVectorOps {
+
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+    // Contrast widens to 16-bit lanes, so each step reads half a vector's worth of bytes.
+    private static final VectorSpecies<Short> SHORTS = ShortVector.SPECIES_PREFERRED.vectorBitSize() >= 128
+            ? ShortVector.SPECIES_PREFERRED
+            : ShortVector.SPECIES_128;
+    private static final VectorSpecies<Byte> HALF_BYTES =
+            VectorSpecies.of(byte.class, VectorShape.forBitSize(SHORTS.vectorBitSize() / 2));
+
+    private GrayPlaneVectorOps() {
+    }
+
+    static void contrast(byte[] src, byte[] dst, int len, int fx) {
+        int i = 0;
+        int bound = HALF_BYTES.loopBound(len);
+        for (; i < bound; i += HALF_BYTES.length()) {
+            ShortVector s = (ShortVector) ByteVector.fromArray(HALF_BYTES, src, i)
+                    .convertShape(VectorOperators.B2S, SHORTS, 0);
+            s = s.and((short) 0xFF)
+                    .sub((short) 128)
+                    .mul((short) fx)
+                    .lanewise(VectorOperators.ASHR, GrayPlaneOps.CONTRAST_SHIFT)
+                    .add((short) 128)
+                    .max((short) 0)
+                    .min((short) 255);
+            ((ByteVector) s.convertShape(VectorOperators.S2B, HALF_BYTES, 0)).intoArray(dst, i);
+        }
+        for (; i < len; i++) {
+            int v = (((src[i] & 0xFF) - 128) * fx >> GrayPlaneOps.CONTRAST_SHIFT) + 128;
+            dst[i] = (byte) Math.max(0, Math.min(255, v));
+        }
+    }
+
+    static void threshold(byte[] src, byte[] dst, int len, int level) {
+        if (level <= 0 || level > 255) {
+            Arrays.fill(dst, 0, len, level <= 0 ? (byte) 0xFF : 0);
+            return;
+        }
+        // Flipping the sign bit maps unsigned 0..255 onto signed -128..127 in order, so a signed compare works.
+        byte flipped = (byte) (level ^ 0x80);
+        ByteVector zero = ByteVector.zero(BYTES);
+        int i = 0;
+        int bound = BYTES.loopBound(len);
+        for (; i < bound; i += BYTES.length()) {
+            VectorMask<Byte> bright = ByteVector.fromArray(BYTES, src, i)
+                    .lanewise(VectorOperators.XOR, (byte) 0x80)
+                    .compare(VectorOperators.GE, flipped);
+            zero.blend((byte) 0xFF, bright).intoArray(dst, i);
+        }
+        for (; i < len; i++) {
+            dst[i] = (src[i] & 0xFF) >= level ? (byte) 0xFF : 0;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.dlb.giftcards.service;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Decodes uploads straight to working resolution. The header is read once per decode ({@link #header});
+ * when the photo is much larger than anything an attempt uses, it is decoded with power-of-two subsampling
+ * (OpenCV's IMREAD_REDUCED_* flags, ImageIO source subsampling) so no full-size raster is ever built.
+ * The encoded upload itself stays in memory: imdecode and the cache key both need all of it.
+ */
+final class ImageIngest {
+
+    // The long side is never subsampled below this; attempts are capped at 2200 px anyway.
+    static final int MIN_DIM = 2000;
+    private static final int MAX_FACTOR = 8;
+
+    /**
+     * What the header says, read once and handed to the memory estimate and the decoders. factor is 1, 2, 4
+     * or 8; an unreadable header is {@link #UNKNOWN} (factor 1, the decoder then reports the bad image).
+     */
+    record Header(int width, int height, int factor) {
+        static final Header UNKNOWN = new Header(0, 0, 1);
+
+        boolean known() {
+            return width > 0 && height > 0;
+        }
+    }
+
+    private ImageIngest() {
+    }
+
+    static int subsampleFactor(int side) {
+        int f = 1;
+        while (f < MAX_FACTOR && side / (f * 2) >= MIN_DIM) f *= 2;
+        return f;
+    }
+
+    static Mat imdecode(byte[] imageBytes, int factor) {
+        int flags = switch (factor) {
+            case 2 -> Imgcodecs.IMREAD_REDUCED_COLOR_2;
+            case 4 -> Imgcodecs.IMREAD_REDUCED_COLOR_4;
+            case 8 -> Imgcodecs.IMREAD_REDUCED_COLOR_8;
+            default -> Imgcodecs.IMREAD_COLOR;
+        };
+        MatOfByte encoded = new MatOfByte(imageBytes);
+        try {
+            return Imgcodecs.imdecode(encoded, flags);
+        } finally {
+            encoded.release();
+        }
+    }
+
+    /** Like ImageIO.read (null when no reader fits), but subsampled by factor in both directions. */
+    static BufferedImage read(byte[] imageBytes, int factor) throws IOException {
+        try (ImageInputStream in = new MemoryCacheImageInputStream(new ByteArrayInputStream(imageBytes))) {
+            ImageReader reader = firstReader(in);
+            if (reader == null) return null;
+            try {
+                reader.setInput(in, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (factor > 1) param.setSourceSubsampling(factor, factor, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /** Dimensions and subsample factor from the header only; {@link Header#UNKNOWN} when no reader understands it. */
+    static Header header(byte[] imageBytes) {
+        try (ImageInputStream in = new MemoryCacheImageInputStream(new ByteArrayInputStream(imageBytes))) {
+            ImageReader reader = firstReader(in);
+            if (reader == null) return Header.UNKNOWN;
+            try {
+                reader.setInput(in, true, true);
+                int w = reader.getWidth(0);
+                int h = reader.getHeight(0);
+                return new Header(w, h, subsampleFactor(Math.max(w, h)));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            return Header.UNKNOWN;
+        }
+    }
+
+    private static ImageReader firstReader(ImageInputStream in) {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+        return readers.hasNext() ? readers.next() : null;
+    }
+}
@@ -0,0 +1,41 @@
+package com.dlb.giftcards.service;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * An uploaded image read once from the multipart stream into an exactly sized array, with its
+ * SHA-256 (the decode cache key) computed during the same copy instead of a second pass.
+ */
+public record ImageUpload(byte[] bytes, String sha256) {
+
+    public static ImageUpload read(MultipartFile file) {
+        if (file == null || file.isEmpty()) throw new IllegalArgumentException("file is empty");
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+            byte[] bytes = readFully(in, file.getSize());
+            return new ImageUpload(bytes, BarcodeDecodeCache.toHex(digest.digest()));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to read file");
+        }
+    }
+
+    private static byte[] readFully(InputStream in, long size) throws IOException {
+        if (size <= 0 || size > Integer.MAX_VALUE - 8) return in.readAllBytes();
+        byte[] bytes = new byte[(int) size];
+        int n = in.readNBytes(bytes, 0, bytes.length);
+        if (n < bytes.length) throw new IOException("Upload shorter than its declared size");
+        if (in.read() != -1) throw new IOException("Upload longer than its declared size");
+        return bytes;
+    }
+}
@@ -0,0 +1,250 @@
+package com.dlb.giftcards.service;
+
+import com.dlb.giftcards.dto.BarcodeDtos;
+import com.dlb.giftcards.exception.DecoderBusyException;
+import jakarta.annotation.PreDestroy;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Reusable native Mats for the OpenCV decode pipeline.
+ * <p>
+ * Blocks are allocated in dimension classes (each side rounded up to a multiple of {@link #CLASS_STEP})
+ * and handed out as ROI views of the requested size. OpenCV's {@code Mat::create} is a no-op when the
+ * destination already has the right size and type, so functions write straight into the pooled block.
+ * <p>
+ * Every decode works through an {@link Arena}; closing it returns all of its blocks. New arenas wait
+ * while live (lent-out) bytes are at the high-water limit, so concurrent decodes queue up instead of
+ * growing native memory without bound. Idle blocks beyond {@code maxIdleBytes} are freed on return.
+ */
+@Component
+public class NativeMatPool {
+
+    private static final int CLASS_STEP = 256;
+
+    private record SizeClass(int rows, int cols, int type) {
+        long bytes() {
+            return (long) rows * cols * CvType.ELEM_SIZE(type);
+        }
+    }
+
+    private final long highWaterBytes;
+    private final long maxIdleBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final Map<SizeClass, ArrayDeque<Mat>> idle = new HashMap<>();
+
+    private long liveBytes;
+    private long idleBytes;
+    private long peakLiveBytes;
+    private long allocations;
+    private long reuses;
+    private long waits;
+    private int openArenas;
+
+    public NativeMatPool(
+            @Value("${APP_BARCODE_MAT_POOL_HIGH_WATER_BYTES:1073741824}") long highWaterBytes,
+            @Value("${APP_BARCODE_MAT_POOL_MAX_IDLE_BYTES:268435456}") long maxIdleBytes
+    ) {
+        this.highWaterBytes = Math.max(1, highWaterBytes);
+        this.maxIdleBytes = Math.max(0, maxIdleBytes);
+    }
+
+    /**
+     * Opens an arena for one decode, waiting up to maxWaitMs while live bytes are at the high-water limit.
+     * An arena is always admitted when nothing else is live, so a single oversized decode cannot deadlock.
+     * Running out of wait is {@link DecoderBusyException}: the server is overloaded, nothing is wrong with the image.
+     */
+    public Arena openArena(long maxWaitMs) {
+        lock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMs));
+            boolean counted = false;
+            while (liveBytes >= highWaterBytes && liveBytes > 0) {
+                if (!counted) {
+                    waits++;
+                    counted = true;
+                }
+                if (remaining <= 0) {
+                    throw new DecoderBusyException("Barcode decoder is at its native memory limit; try again shortly",
+                            Math.max(1, TimeUnit.MILLISECONDS.toSeconds(Math.max(0, maxWaitMs) + 999)));
+                }
+                remaining = released.awaitNanos(remaining);
+            }
+            openArenas++;
+            return new Arena();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for decode memory", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public BarcodeDtos.MatPoolStats stats() {
+        lock.lock();
+        try {
+            BarcodeDtos.MatPoolStats s = new BarcodeDtos.MatPoolStats();
+            s.liveBytes = liveBytes;
+            s.idleBytes = idleBytes;
+            s.peakLiveBytes = peakLiveBytes;
+            s.highWaterBytes = highWaterBytes;
+            s.maxIdleBytes = maxIdleBytes;
+            s.allocations = allocations;
+            s.reuses = reuses;
+            s.waits = waits;
+            s.openArenas = openArenas;
+            s.idleBlocks = idle.values().stream().mapToInt(ArrayDeque::size).sum();
+            return s;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long liveBytes() {
+        lock.lock();
+        try {
+            return liveBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    void clear() {
+        lock.lock();
+        try {
+            for (ArrayDeque<Mat> q : idle.values()) {
+                for (Mat m : q) m.release();
+            }
+            idle.clear();
+            idleBytes = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Mat take(SizeClass sc) {
+        lock.lock();
+        try {
+            ArrayDeque<Mat> q = idle.get(sc);
+            Mat block = q == null ? null : q.pollFirst();
+            if (block != null) {
+                idleBytes -= sc.bytes();
+                reuses++;
+            } else {
+                allocations++;
+            }
+            liveBytes += sc.bytes();
+            peakLiveBytes = Math.max(peakLiveBytes, liveBytes);
+            return block != null ? block : new Mat(sc.rows(), sc.cols(), sc.type());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void give(SizeClass sc, Mat block) {
+        lock.lock();
+        try {
+            liveBytes -= sc.bytes();
+            if (idleBytes + sc.bytes() <= maxIdleBytes) {
+                idle.computeIfAbsent(sc, k -> new ArrayDeque<>()).addFirst(block);
+                idleBytes += sc.bytes();
+            } else {
+                block.release();
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void arenaClosed() {
+        lock.lock();
+        try {
+            openArenas--;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static int classDim(int n) {
+        return ((Math.max(1, n) + CLASS_STEP - 1) / CLASS_STEP) * CLASS_STEP;
+    }
+
+    /**
+     * Borrowing scope for one decode. Safe to use from several decode workers at once.
+     * Views handed out must not be released by callers; give them back or close the arena.
+     */
+    public final class Arena implements AutoCloseable {
+
+        private record Lease(SizeClass sc, Mat block) {
+        }
+
+        private final Map<Mat, Lease> leases = new IdentityHashMap<>();
+        private boolean closed;
+
+        private Arena() {
+        }
+
+        /** Returns a rows x cols Mat of the given type backed by a pooled block. Contents are undefined. */
+        public Mat borrow(int rows, int cols, int type) {
+            SizeClass sc = new SizeClass(classDim(rows), classDim(cols), type);
+            Mat block = take(sc);
+            Mat view = block.submat(new Rect(0, 0, Math.max(1, cols), Math.max(1, rows)));
+            synchronized (this) {
+                if (closed) {
+                    view.release();
+                    give(sc, block);
+                    throw new IllegalStateException("Arena is closed");
+                }
+                leases.put(view, new Lease(sc, block));
+            }
+            return view;
+        }
+
+        /** Borrows a Mat shaped like {@code like} (same size and type). */
+        public Mat borrowLike(Mat like) {
+            return borrow(like.rows(), like.cols(), like.type());
+        }
+
+        /** Returns a borrowed view early so later attempts in this decode can reuse its block. */
+        public void giveBack(Mat view) {
+            Lease lease;
+            synchronized (this) {
+                lease = leases.remove(view);
+            }
+            if (lease == null) return;
+            view.release();
+            give(lease.sc, lease.block);
+        }
+
+        @Override
+        public void close() {
+            Map<Mat, Lease> remaining;
+            synchronized (this) {
+                if (closed) return;
+                closed = true;
+                remaining = new IdentityHashMap<>(leases);
+                leases.clear();
+            }
+            for (Map.Entry<Mat, Lease> e : remaining.entrySet()) {
+                e.getKey().release();
+                give(e.getValue().sc, e.getValue().block);
+            }
+            arenaClosed();
+        }
+    }
+}
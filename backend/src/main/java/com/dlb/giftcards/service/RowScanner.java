@@ -0,0 +1,101 @@
+package com.dlb.giftcards.service;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.ChecksumException;
+import com.google.zxing.FormatException;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.oned.Code128Reader;
+
+/**
+ * Cheap first try before the variant search: a handful of evenly spaced rows, then columns, of the
+ * gray base are binarized one at a time ({@link GlobalHistogramBinarizer} only builds a per-row histogram)
+ * and handed straight to {@link Code128Reader#decodeRow}, forwards and reversed. A clean, roughly axis-aligned
+ * barcode is found in a few milliseconds without building a HybridBinarizer over the whole image.
+ * <p>
+ * Like the full reader, the first line that decodes wins; Code 128's check character makes a wrong
+ * read from a single line very unlikely.
+ */
+final class RowScanner {
+
+    private RowScanner() {
+    }
+
+    /** Decoded text, or null when none of the sampled lines decode. lines of 0 or less disables the scan. */
+    static String scan(LuminanceSource src, int lines) {
+        if (lines <= 0) return null;
+        String text = scanRows(src, lines);
+        if (text != null) return text;
+        // Columns catch bars that run horizontally (a card photographed sideways).
+        return scanRows(new Columns(src), lines);
+    }
+
+    private static String scanRows(LuminanceSource src, int lines) {
+        int height = src.getHeight();
+        BinaryBitmap bitmap = new BinaryBitmap(new GlobalHistogramBinarizer(src));
+        Code128Reader reader = new Code128Reader();
+        BitArray row = null;
+        // Middle first, then alternately above and below, like OneDReader's try-harder walk.
+        for (int i = 0; i < lines; i++) {
+            int offset = (i + 1) / 2;
+            int step = Math.max(1, height / (lines + 1));
+            int y = height / 2 + ((i & 1) == 0 ? offset : -offset) * step;
+            if (y < 0 || y >= height) continue;
+            try {
+                row = bitmap.getBlackRow(y, row);
+            } catch (NotFoundException e) {
+                continue;
+            }
+            for (int pass = 0; pass < 2; pass++) {
+                if (pass == 1) row.reverse();
+                try {
+                    return reader.decodeRow(y, row, null).getText();
+                } catch (NotFoundException | ChecksumException | FormatException e) {
+                    // Try the other direction, then the next line.
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The source read column by column: row x of this view is column x of the source, top to bottom.
+     * Only the sampled columns are gathered, instead of rotating the whole plane. Full-frame planes
+     * hand out their backing array from getMatrix, so nothing is copied up front either.
+     */
+    private static final class Columns extends LuminanceSource {
+
+        private final byte[] matrix;
+        private final int stride;
+
+        Columns(LuminanceSource src) {
+            super(src.getHeight(), src.getWidth());
+            this.matrix = src.getMatrix();
+            this.stride = src.getWidth();
+        }
+
+        @Override
+        public byte[] getRow(int x, byte[] row) {
+            int height = getWidth();
+            if (row == null || row.length < height) row = new byte[height];
+            for (int y = 0, i = x; y < height; y++, i += stride) row[y] = matrix[i];
+            return row;
+        }
+
+        /** The transposed image, built row by row; scans only need getRow, so this is rarely called. */
+        @Override
+        public byte[] getMatrix() {
+            int width = getWidth();
+            int height = getHeight();
+            byte[] out = new byte[width * height];
+            byte[] row = new byte[width];
+            for (int y = 0; y < height; y++) {
+                getRow(y, row);
+                System.arraycopy(row, 0, out, y * width, width);
+            }
+            return out;
+        }
+    }
+}
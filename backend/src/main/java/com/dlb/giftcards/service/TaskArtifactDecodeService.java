@@ -0,0 +1,202 @@
+package com.dlb.giftcards.service;
+
+import com.dlb.giftcards.dto.BarcodeDtos;
+import com.dlb.giftcards.entity.AutomationTaskArtifactEntity;
+import com.dlb.giftcards.entity.AutomationTaskEntity;
+import com.dlb.giftcards.exception.BarcodeNotFoundException;
+import com.dlb.giftcards.repository.AutomationTaskArtifactRepository;
+import com.dlb.giftcards.repository.AutomationTaskRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opt-in background barcode decode of image artifacts uploaded to automation tasks. The upload only queues
+ * the artifact; a small dedicated pool decodes it through {@link BarcodeDecodeService} (so the decode cache
+ * and bulkhead apply), records the outcome on the artifact row, and merges decoded text into the task's
+ * result under {@link #RESULT_KEY}, keyed by artifact id.
+ * <p>
+ * The queue is bounded. An artifact that does not fit is marked skipped rather than failing the upload;
+ * it can still be decoded through /api/barcode/decode/code128. Artifacts left queued by a restart are
+ * queued again once the application is ready.
+ */
+@Service
+public class TaskArtifactDecodeService {
+
+    private static final Logger log = LoggerFactory.getLogger(TaskArtifactDecodeService.class);
+
+    public static final String QUEUED = "queued";
+    public static final String DECODED = "decoded";
+    public static final String NOT_FOUND = "not_found";
+    public static final String FAILED = "failed";
+    public static final String SKIPPED = "skipped";
+
+    /** Object in the task result holding one entry per decoded artifact. */
+    public static final String RESULT_KEY = "artifactBarcodes";
+
+    private static final String[] IMAGE_EXTENSIONS = {".png", ".jpg", ".jpeg", ".webp", ".bmp", ".gif"};
+    private static final int MAX_ERROR_LENGTH = 255;
+
+    private final BarcodeDecodeService decodeService;
+    private final AutomationTaskArtifactRepository artifactRepo;
+    private final AutomationTaskRepository taskRepo;
+    private final TaskLocks locks;
+    private final ObjectMapper om;
+    private final TransactionTemplate tx;
+    private final boolean enabled;
+    private final ThreadPoolExecutor executor;
+
+    public TaskArtifactDecodeService(
+            BarcodeDecodeService decodeService,
+            AutomationTaskArtifactRepository artifactRepo,
+            AutomationTaskRepository taskRepo,
+            TaskLocks locks,
+            ObjectMapper om,
+            TransactionTemplate tx,
+            @Value("${APP_TASK_ARTIFACT_DECODE_ENABLED:false}") boolean enabled,
+            @Value("${APP_TASK_ARTIFACT_DECODE_CONCURRENCY:1}") int concurrency,
+            @Value("${APP_TASK_ARTIFACT_DECODE_QUEUE_CAPACITY:20}") int queueCapacity
+    ) {
+        this.decodeService = decodeService;
+        this.artifactRepo = artifactRepo;
+        this.taskRepo = taskRepo;
+        this.locks = locks;
+        this.om = om;
+        this.tx = tx;
+        this.enabled = enabled;
+        int workers = Math.max(1, concurrency);
+        AtomicInteger seq = new AtomicInteger();
+        // Fixed size with an ArrayBlockingQueue: the default AbortPolicy is what turns a full queue into a skip.
+        this.executor = enabled
+                ? new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+            Thread t = new Thread(r, "artifact-decode-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        })
+                : null;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (executor != null) executor.shutdownNow();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void requeueStale() {
+        if (!enabled) return;
+        for (AutomationTaskArtifactEntity a : artifactRepo.findByBarcodeStatusOrderByCreatedAtAsc(QUEUED)) {
+            submit(a);
+        }
+    }
+
+    /** Whether a newly stored artifact should be queued: decoding is enabled and it looks like an image. */
+    public boolean accepts(String contentType, String filename) {
+        if (!enabled) return false;
+        if (contentType != null && contentType.toLowerCase(Locale.ROOT).startsWith("image/")) return true;
+        if (filename == null) return false;
+        String name = filename.toLowerCase(Locale.ROOT);
+        for (String ext : IMAGE_EXTENSIONS) {
+            if (name.endsWith(ext)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Queues a stored (committed) artifact whose status is already {@link #QUEUED}. Returns it unchanged,
+     * or marked {@link #SKIPPED} when the queue is full.
+     */
+    public AutomationTaskArtifactEntity submit(AutomationTaskArtifactEntity artifact) {
+        String artifactId = artifact.getId();
+        try {
+            executor.execute(() -> run(artifactId));
+            return artifact;
+        } catch (RejectedExecutionException e) {
+            artifact.setBarcodeStatus(SKIPPED);
+            artifact.setBarcodeError("Artifact decode queue is full");
+            return artifactRepo.save(artifact);
+        }
+    }
+
+    private void run(String artifactId) {
+        AutomationTaskArtifactEntity artifact = artifactRepo.findById(artifactId).orElse(null);
+        // Deleted together with its task while it waited in the queue.
+        if (artifact == null) return;
+
+        String status;
+        String text = null;
+        String error = null;
+        BarcodeDtos.DecodeBarcodeResponse decoded = null;
+        try {
+            byte[] bytes = Files.readAllBytes(Path.of(artifact.getStoragePath()));
+            decoded = decodeService.decodeCode128(bytes, false, BarcodeDecodeService.DecodeLimits.BACKGROUND);
+            status = DECODED;
+            text = decoded.serialNumber;
+        } catch (BarcodeNotFoundException e) {
+            status = NOT_FOUND;
+            error = e.getMessage();
+        } catch (Exception e) {
+            status = FAILED;
+            error = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+            log.warn("Background decode of artifact {} failed: {}", artifactId, error);
+        }
+
+        String finalStatus = status;
+        String finalText = text;
+        String finalError = error == null || error.length() <= MAX_ERROR_LENGTH ? error : error.substring(0, MAX_ERROR_LENGTH);
+        BarcodeDtos.DecodeBarcodeResponse finalDecoded = decoded;
+        // complete/fail rewrite the same result from their own copy; the task lock keeps either from losing the other's write.
+        locks.withLock(artifact.getTaskId(), () -> tx.execute(s -> {
+            AutomationTaskArtifactEntity a = artifactRepo.findById(artifactId).orElse(null);
+            if (a == null) return null;
+            a.setBarcodeStatus(finalStatus);
+            a.setBarcodeText(finalText);
+            a.setBarcodeError(finalError);
+            a.setBarcodeDecodedAt(Instant.now());
+            artifactRepo.save(a);
+            if (finalDecoded != null) mergeIntoResult(a, finalDecoded);
+            return null;
+        }));
+    }
+
+    /** Read-modify-write of the task result; only call it under the task's lock. */
+    private void mergeIntoResult(AutomationTaskArtifactEntity artifact, BarcodeDtos.DecodeBarcodeResponse decoded) {
+        AutomationTaskEntity task = taskRepo.findById(artifact.getTaskId()).orElse(null);
+        if (task == null) return;
+        try {
+            JsonNode current = task.getResultJson() == null || task.getResultJson().isBlank()
+                    ? null : om.readTree(task.getResultJson());
+            // A non-object result (e.g. an array from the automation) is left alone; the artifact row still has the text.
+            if (current != null && !current.isNull() && !current.isObject()) return;
+            ObjectNode result = current != null && current.isObject() ? (ObjectNode) current : om.createObjectNode();
+            ObjectNode byArtifact = result.get(RESULT_KEY) instanceof ObjectNode o ? o : result.putObject(RESULT_KEY);
+            ObjectNode entry = byArtifact.putObject(artifact.getId());
+            entry.put("filename", artifact.getFilename());
+            entry.put("serialNumber", decoded.serialNumber);
+            entry.put("rawText", decoded.rawText);
+            entry.put("decodedAt", artifact.getBarcodeDecodedAt().toString());
+            task.setResultJson(om.writeValueAsString(result));
+            taskRepo.save(task);
+        } catch (Exception ex) {
+            throw new IllegalStateException("Failed to merge artifact barcode into task result", ex);
+        }
+    }
+}
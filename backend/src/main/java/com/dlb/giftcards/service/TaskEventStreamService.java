@@ -0,0 +1,282 @@
+package com.dlb.giftcards.service;
+
+import com.dlb.giftcards.entity.TaskStatus;
+import com.dlb.giftcards.entity.TaskType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server-Sent Events feed of {@link TaskLifecycleEvent}s for /api/tasks/events, so the frontend and the
+ * automation scripts can follow task state without polling the full list.
+ * <p>
+ * Every event gets an increasing id and is kept in a bounded ring buffer (APP_TASK_EVENTS_BUFFER). A client
+ * reconnecting with Last-Event-ID gets the buffered events it missed; when that id has already left the
+ * buffer (or comes from before a restart) it gets a {@code reset} event first and should reload the list.
+ * <p>
+ * Each connection has its own bounded queue (APP_TASK_EVENTS_CLIENT_QUEUE) drained by its own sender, so
+ * publishing never waits on a socket. A client that falls that far behind is disconnected rather than
+ * buffered without limit; it can reconnect and resume from its last id.
+ */
+@Service
+public class TaskEventStreamService {
+
+    private static final Logger log = LoggerFactory.getLogger(TaskEventStreamService.class);
+
+    private final ObjectMapper om;
+    private final int bufferSize;
+    private final int clientQueue;
+    private final long timeoutMs;
+    private final ExecutorService senders;
+    private final ScheduledExecutorService heartbeat;
+
+    // Guarded by ring: the buffer, the id counter and the client set change together, so a subscriber's
+    // replay and its live events neither overlap nor leave a gap.
+    private final ArrayDeque<Entry> ring = new ArrayDeque<>();
+    private final Set<Client> clients = new LinkedHashSet<>();
+    private long lastId;
+
+    private record Entry(long id, TaskLifecycleEvent event, Set<ResponseBodyEmitter.DataWithMediaType> frame) {
+    }
+
+    public TaskEventStreamService(
+            ObjectMapper om,
+            @Value("${APP_TASK_EVENTS_BUFFER:1000}") int bufferSize,
+            @Value("${APP_TASK_EVENTS_CLIENT_QUEUE:256}") int clientQueue,
+            @Value("${APP_TASK_EVENTS_TIMEOUT_MS:300000}") long timeoutMs,
+            @Value("${APP_TASK_EVENTS_HEARTBEAT_MS:15000}") long heartbeatMs
+    ) {
+        this.om = om;
+        this.bufferSize = Math.max(1, bufferSize);
+        this.clientQueue = Math.max(1, clientQueue);
+        this.timeoutMs = Math.max(0, timeoutMs);
+        // Ids from an earlier run are always below this one's, so a stale Last-Event-ID is seen as a gap.
+        this.lastId = System.currentTimeMillis() * 1000;
+        AtomicInteger seq = new AtomicInteger();
+        // At most one send in flight per client, so the pool grows with the number of stalled clients only.
+        this.senders = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "task-events-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "task-events-heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        // A comment line keeps proxies from idling the stream out and notices clients that went away.
+        if (heartbeatMs > 0) {
+            heartbeat.scheduleWithFixedDelay(this::sendHeartbeat, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        heartbeat.shutdownNow();
+        List<Client> open;
+        synchronized (ring) {
+            open = new ArrayList<>(clients);
+            clients.clear();
+        }
+        for (Client c : open) c.close();
+        senders.shutdown();
+    }
+
+    /**
+     * Opens a stream of task events, optionally only those of one type and/or status. lastEventId (the
+     * Last-Event-ID of a reconnecting client) replays the buffered events after it.
+     */
+    public SseEmitter subscribe(String type, String status, String lastEventId) {
+        TaskType wantedType = type == null || type.isBlank() ? null : TaskType.fromString(type);
+        TaskStatus wantedStatus = parseStatus(status);
+        Long resumeFrom = parseId(lastEventId);
+
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Client client;
+        synchronized (ring) {
+            List<Set<ResponseBodyEmitter.DataWithMediaType>> replay = new ArrayList<>();
+            if (resumeFrom == null) {
+                // Lets a fresh client resume from here even if nothing happens before it disconnects.
+                replay.add(control("ready", lastId));
+            } else {
+                long oldest = ring.isEmpty() ? lastId + 1 : ring.peekFirst().id;
+                boolean gap = resumeFrom < oldest - 1 || resumeFrom > lastId;
+                if (gap) replay.add(control("reset", null));
+                for (Entry e : ring) {
+                    if ((gap || e.id > resumeFrom) && matches(e.event, wantedType, wantedStatus)) replay.add(e.frame);
+                }
+            }
+            // Room for the whole replay on top of the live backlog limit.
+            client = new Client(emitter, wantedType, wantedStatus, replay.size() + clientQueue);
+            for (Set<ResponseBodyEmitter.DataWithMediaType> frame : replay) client.offer(frame);
+            clients.add(client);
+        }
+        emitter.onCompletion(() -> remove(client));
+        emitter.onTimeout(() -> remove(client));
+        emitter.onError(e -> remove(client));
+        return emitter;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onTaskEvent(TaskLifecycleEvent event) {
+        synchronized (ring) {
+            long id = ++lastId;
+            Entry entry = new Entry(id, event, SseEmitter.event()
+                    .id(Long.toString(id))
+                    .name(event.kind())
+                    .data(payload(event), MediaType.APPLICATION_JSON)
+                    .build());
+            ring.addLast(entry);
+            if (ring.size() > bufferSize) ring.removeFirst();
+
+            for (Iterator<Client> it = clients.iterator(); it.hasNext(); ) {
+                Client c = it.next();
+                if (!matches(event, c.type, c.status)) continue;
+                if (!c.offer(entry.frame)) it.remove();
+            }
+        }
+    }
+
+    private void sendHeartbeat() {
+        Set<ResponseBodyEmitter.DataWithMediaType> frame = SseEmitter.event().comment("keepalive").build();
+        synchronized (ring) {
+            clients.removeIf(c -> !c.offer(frame));
+        }
+    }
+
+    private void remove(Client c) {
+        c.closed = true;
+        synchronized (ring) {
+            clients.remove(c);
+        }
+    }
+
+    /** Compact event body: enough to update a list row or decide whether to fetch the task. */
+    private String payload(TaskLifecycleEvent e) {
+        ObjectNode n = om.createObjectNode();
+        n.put("id", e.taskId());
+        if (e.type() != null) n.put("type", e.type().getCode());
+        if (e.status() != null) n.put("status", e.status().name());
+        if (e.workerId() != null) n.put("workerId", e.workerId());
+        n.put("at", e.at().toString());
+        return n.toString();
+    }
+
+    private Set<ResponseBodyEmitter.DataWithMediaType> control(String name, Long id) {
+        SseEmitter.SseEventBuilder b = SseEmitter.event().name(name).data("{}", MediaType.APPLICATION_JSON);
+        if (id != null) b.id(Long.toString(id));
+        return b.build();
+    }
+
+    private static boolean matches(TaskLifecycleEvent e, TaskType type, TaskStatus status) {
+        return (type == null || type == e.type()) && (status == null || status == e.status());
+    }
+
+    private static TaskStatus parseStatus(String status) {
+        if (status == null || status.isBlank()) return null;
+        try {
+            return TaskStatus.valueOf(status.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown task status: " + status);
+        }
+    }
+
+    private static Long parseId(String id) {
+        if (id == null || id.isBlank()) return null;
+        try {
+            return Long.parseLong(id.trim());
+        } catch (NumberFormatException e) {
+            // Not one of ours; treat it as a gap so the client reloads.
+            return -1L;
+        }
+    }
+
+    private final class Client {
+        final SseEmitter emitter;
+        final TaskType type;
+        final TaskStatus status;
+        final ArrayBlockingQueue<Set<ResponseBodyEmitter.DataWithMediaType>> queue;
+        final AtomicBoolean draining = new AtomicBoolean();
+        volatile boolean closed;
+        // Set by the sender once the emitter is completed.
+        volatile boolean completed;
+
+        Client(SseEmitter emitter, TaskType type, TaskStatus status, int capacity) {
+            this.emitter = emitter;
+            this.type = type;
+            this.status = status;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        /** Queues a frame for sending; false when the client is gone or too far behind (it is then closed). */
+        boolean offer(Set<ResponseBodyEmitter.DataWithMediaType> frame) {
+            if (closed) return false;
+            if (!queue.offer(frame)) {
+                log.debug("Task event client fell {} events behind; disconnecting", queue.size());
+                close();
+                return false;
+            }
+            schedule();
+            return true;
+        }
+
+        /** Completes the stream from the sender, never from the publisher: complete() waits out a stalled send. */
+        void close() {
+            closed = true;
+            queue.clear();
+            schedule();
+        }
+
+        private void schedule() {
+            if (!draining.compareAndSet(false, true)) return;
+            try {
+                senders.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                draining.set(false);
+            }
+        }
+
+        private void drain() {
+            try {
+                Set<ResponseBodyEmitter.DataWithMediaType> frame;
+                while (!closed && (frame = queue.poll()) != null) emitter.send(frame);
+                if (closed && !completed) {
+                    completed = true;
+                    emitter.complete();
+                }
+            } catch (Exception e) {
+                // Client disconnected or the stream already timed out; the emitter callbacks drop it.
+                closed = true;
+                completed = true;
+            } finally {
+                draining.set(false);
+            }
+            // Work that arrived (or a close) while this pass was finishing.
+            if (closed ? !completed : !queue.isEmpty()) schedule();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.dlb.giftcards.service;
+
+import com.dlb.giftcards.entity.AutomationTaskEntity;
+import com.dlb.giftcards.entity.TaskStatus;
+import com.dlb.giftcards.entity.TaskType;
+
+import java.time.Instant;
+
+/**
+ * A task changed state; published by {@link TaskService} and streamed to /api/tasks/events subscribers once
+ * the change has committed. status is the task's status after the change (its last status for deleted).
+ */
+public record TaskLifecycleEvent(String kind, String taskId, TaskType type, TaskStatus status, String workerId, Instant at) {
+
+    public static final String CREATED = "created";
+    public static final String CLAIMED = "claimed";
+    public static final String RELEASED = "released";
+    public static final String COMPLETED = "completed";
+    public static final String FAILED = "failed";
+    public static final String DELETED = "deleted";
+
+    public static TaskLifecycleEvent of(String kind, AutomationTaskEntity task) {
+        return new TaskLifecycleEvent(kind, task.getId(), task.getType(), task.getStatus(), task.getWorkerId(), Instant.now());
+    }
+}
@@ -0,0 +1,32 @@
+package com.dlb.giftcards.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * In-process locks for read-modify-write of one task's result. {@link TaskService#complete}/{@link TaskService#fail}
+ * and the background artifact decode ({@link TaskArtifactDecodeService}) both rewrite resultJson from the copy they
+ * read, and the task has no JPA @Version to catch a lost update, so each holds its task's lock around the whole
+ * transaction (commit included). One SQLite file means one process, so a JVM lock covers every writer.
+ * <p>
+ * Locks are striped by task id: a fixed set of monitors, so nothing grows with the number of tasks.
+ */
+@Component
+public class TaskLocks {
+
+    private static final int STRIPES = 64;
+
+    private final Object[] stripes = new Object[STRIPES];
+
+    public TaskLocks() {
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new Object();
+    }
+
+    /** Runs work while holding taskId's lock. Start the transaction inside work, so it commits before the lock is freed. */
+    public <T> T withLock(String taskId, Supplier<T> work) {
+        synchronized (stripes[Math.floorMod(taskId.hashCode(), STRIPES)]) {
+            return work.get();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.dlb.giftcards.service;
+
+import com.dlb.giftcards.entity.AutomationTaskEntity;
+import com.dlb.giftcards.entity.TaskType;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Long-poll mode for /api/tasks/next. A request with waitMs that finds nothing to claim is parked instead of
+ * answering 204; a {@link TaskReadyEvent} for its type wakes the parked requests and hands new tasks to the
+ * oldest ones first. Parked requests cost no queries until something happens: only events trigger claims.
+ * <p>
+ * Claims for parked requests run on one dispatcher thread, one waiter at a time, and stop at the first
+ * waiter that finds nothing, so a single new task does not set off a claim attempt per waiting worker.
+ */
+@Service
+public class TaskNextWaitService {
+
+    private final TaskService taskService;
+    private final long maxWaitMs;
+    private final ExecutorService dispatcher;
+    // Parked requests per type, oldest first. Guarded by the map's monitor.
+    private final Map<TaskType, Set<Waiter<?>>> waiting = new EnumMap<>(TaskType.class);
+
+    public TaskNextWaitService(
+            TaskService taskService,
+            @Value("${APP_TASK_NEXT_MAX_WAIT_MS:30000}") long maxWaitMs
+    ) {
+        this.taskService = taskService;
+        this.maxWaitMs = Math.max(0, maxWaitMs);
+        this.dispatcher = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "task-next-dispatch");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        dispatcher.shutdownNow();
+    }
+
+    /**
+     * Claims the next task like {@link TaskService#next}. With waitMs > 0 (capped by APP_TASK_NEXT_MAX_WAIT_MS)
+     * and nothing to claim, the result completes when a task is claimed for this caller, or with an empty
+     * claim once the wait runs out. view turns the claim into the response body.
+     */
+    public <R> DeferredResult<R> awaitNext(String type, String workerId, Long waitMs,
+                                           Function<Optional<AutomationTaskEntity>, R> view) {
+        long wait = waitMs == null ? 0 : Math.max(0, Math.min(waitMs, maxWaitMs));
+        DeferredResult<R> out = wait > 0 ? new DeferredResult<>(wait) : new DeferredResult<>();
+        if (wait == 0 || type == null || type.isBlank()) {
+            out.setResult(view.apply(taskService.next(type, workerId)));
+            return out;
+        }
+
+        TaskType wanted = TaskType.fromString(type);
+        Waiter<R> w = new Waiter<>(wanted, workerId, out, view);
+        synchronized (waiting) {
+            waiting.computeIfAbsent(wanted, k -> new LinkedHashSet<>()).add(w);
+        }
+        out.onTimeout(() -> w.finish(Optional.empty()));
+        out.onCompletion(() -> remove(w));
+        // The first claim attempt goes through the dispatcher too, behind any older waiters of the type.
+        dispatcher.execute(() -> drain(wanted));
+        return out;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onTaskReady(TaskReadyEvent event) {
+        dispatcher.execute(() -> drain(event.type()));
+    }
+
+    private void drain(TaskType type) {
+        List<Waiter<?>> snapshot;
+        synchronized (waiting) {
+            Set<Waiter<?>> set = waiting.get(type);
+            if (set == null || set.isEmpty()) return;
+            snapshot = new ArrayList<>(set);
+        }
+        for (Waiter<?> w : snapshot) {
+            // Nothing left to claim; the rest keep waiting for the next event.
+            if (!w.tryClaim()) return;
+        }
+    }
+
+    private void remove(Waiter<?> w) {
+        synchronized (waiting) {
+            Set<Waiter<?>> set = waiting.get(w.type);
+            if (set != null) set.remove(w);
+        }
+    }
+
+    private final class Waiter<R> {
+        final TaskType type;
+        final String workerId;
+        final DeferredResult<R> out;
+        final Function<Optional<AutomationTaskEntity>, R> view;
+        // Guarded by this waiter's monitor, which also serializes a claim with the timeout.
+        boolean done;
+
+        Waiter(TaskType type, String workerId, DeferredResult<R> out, Function<Optional<AutomationTaskEntity>, R> view) {
+            this.type = type;
+            this.workerId = workerId;
+            this.out = out;
+            this.view = view;
+        }
+
+        /** False when there was nothing to claim; true when this waiter got a task or no longer needs one. */
+        synchronized boolean tryClaim() {
+            if (done || out.isSetOrExpired()) return true;
+            Optional<AutomationTaskEntity> task;
+            try {
+                task = taskService.next(type.name(), workerId);
+            } catch (RuntimeException e) {
+                done = true;
+                out.setErrorResult(e);
+                return true;
+            }
+            if (task.isEmpty()) return false;
+            finish(task);
+            return true;
+        }
+
+        synchronized void finish(Optional<AutomationTaskEntity> task) {
+            if (done) return;
+            done = true;
+            remove(this);
+            // The client went away while its task was being claimed: put the task back for the next worker.
+            if (!out.setResult(view.apply(task)) && task.isPresent()) {
+                taskService.release(task.get().getId(), task.get().getClaimToken());
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.dlb.giftcards.service;
+
+import com.dlb.giftcards.entity.TaskType;
+
+/**
+ * Published when a READY task of the type may have appeared: a task was created or released, or an anycard
+ * was flagged needsRedeem (its redeem task is seeded on the next claim). Delivered after the publishing
+ * transaction commits; see {@link TaskNextWaitService}.
+ */
+public record TaskReadyEvent(TaskType type) {
+}
@@ -13,44 +13,64 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.MessageDigest;
+import java.time.Instant;
 import java.util.Comparator;
 import java.util.List;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
 
 @Service
 public class TaskService {
 
+    // Claims lost in a row before /next gives up with 204; each loss means another worker got a task.
+    private static final int MAX_CLAIM_ATTEMPTS = 16;
+
     private final AutomationTaskRepository repo;
     private final AutomationTaskArtifactRepository artifactRepo;
     private final AnycardService anycardService;
     private final GiftCardAnycardRepository anycardRepo;
+    private final TaskArtifactDecodeService artifactDecoder;
+    private final TaskLocks locks;
     private final ObjectMapper om;
+    private final TransactionTemplate tx;
+    private final ApplicationEventPublisher events;
     private final Path artifactsDir;
+    private final Object redeemTasksLock = new Object();
 
     public TaskService(
             AutomationTaskRepository repo,
             AutomationTaskArtifactRepository artifactRepo,
             AnycardService anycardService,
             GiftCardAnycardRepository anycardRepo,
+            TaskArtifactDecodeService artifactDecoder,
+            TaskLocks locks,
             ObjectMapper om,
+            TransactionTemplate tx,
+            ApplicationEventPublisher events,
             @Value("${APP_ARTIFACTS_DIR:./data/artifacts}") String artifactsDir
     ) {
         this.repo = repo;
         this.artifactRepo = artifactRepo;
         this.anycardService = anycardService;
         this.anycardRepo = anycardRepo;
+        this.artifactDecoder = artifactDecoder;
+        this.locks = locks;
         this.om = om;
+        this.tx = tx;
+        this.events = events;
         this.artifactsDir = Path.of(artifactsDir);
     }
 
@@ -70,35 +90,79 @@ public class TaskService {
         e.setType(req.type);
         e.setStatus(TaskStatus.READY);
         e.setDataJson(writeJson(req.data));
-        return repo.save(e);
+        e = repo.save(e);
+        events.publishEvent(new TaskReadyEvent(e.getType()));
+        events.publishEvent(TaskLifecycleEvent.of(TaskLifecycleEvent.CREATED, e));
+        return e;
     }
 
+    /**
+     * Hands a claimed task back (IN_PROGRESS to READY) so another worker can take it, e.g. when a worker shuts
+     * down mid-task. With a claimToken only that claim is released.
+     */
     @Transactional
-    public Optional<AutomationTaskEntity> next(String type) {
+    public AutomationTaskEntity release(String id, String claimToken) {
+        AutomationTaskEntity task = getOrThrow(id);
+        String token = claimToken == null || claimToken.isBlank() ? null : claimToken;
+        if (repo.release(id, token, Instant.now()) == 0) {
+            throw new IllegalArgumentException("Task " + id + " is not in progress" + (token == null ? "" : " under this claimToken"));
+        }
+        events.publishEvent(new TaskReadyEvent(task.getType()));
+        AutomationTaskEntity released = getOrThrow(id);
+        events.publishEvent(TaskLifecycleEvent.of(TaskLifecycleEvent.RELEASED, released));
+        return released;
+    }
+
+    /**
+     * Claims the oldest READY task of the type for workerId. The claim is a single conditional UPDATE
+     * (see {@link AutomationTaskRepository#claim}), so concurrent callers never get the same task: a caller
+     * that loses the race moves on to the next oldest READY task.
+     */
+    public Optional<AutomationTaskEntity> next(String type, String workerId) {
         if (type == null || type.isBlank()) return Optional.empty();
 
         TaskType wantedType = TaskType.fromString(type);
+        if (wantedType != TaskType.GETMYBONUS_ANYCARD) return Optional.empty();
 
-        Optional<AutomationTaskEntity> found;
-        switch (wantedType) {
-            case GETMYBONUS_ANYCARD -> {
-                ensureAnycardRedeemTasks();
-                found = repo.findFirstByStatusAndTypeOrderByCreatedAtAsc(TaskStatus.READY, wantedType);
-            }
-            default -> {
-                return Optional.empty();
-            }
+        // Committed before any claim, and one caller at a time, so concurrent polls do not seed duplicates.
+        synchronized (redeemTasksLock) {
+            tx.executeWithoutResult(s -> ensureAnycardRedeemTasks());
         }
 
-        if (found.isEmpty()) return Optional.empty();
+        String worker = workerId == null || workerId.isBlank() ? null : workerId.trim();
+        for (int i = 0; i < MAX_CLAIM_ATTEMPTS; i++) {
+            Optional<AutomationTaskEntity> found = repo.findFirstByStatusAndTypeOrderByCreatedAtAsc(TaskStatus.READY, wantedType);
+            if (found.isEmpty()) return Optional.empty();
+
+            AutomationTaskEntity candidate = found.get();
+            long version = candidate.getVersion() == null ? 0 : candidate.getVersion();
+            String claimToken = UUID.randomUUID().toString();
+            if (repo.claim(candidate.getId(), version, claimToken, worker, Instant.now()) == 0) continue;
 
-        AutomationTaskEntity task = found.get();
-        if (wantedType == TaskType.GETMYBONUS_ANYCARD) {
-            task = ensureTaskHasAnycardSerialNumber(task);
+            // The row is ours now; enrich it without racing anyone. The claim has already committed, so a
+            // failure here hands the task back instead of leaving it IN_PROGRESS with nobody working on it.
+            AutomationTaskEntity claimed;
+            try {
+                claimed = tx.execute(s -> {
+                    AutomationTaskEntity task = getOrThrow(candidate.getId());
+                    if (wantedType == TaskType.GETMYBONUS_ANYCARD) {
+                        task = repo.save(ensureTaskHasAnycardSerialNumber(task));
+                    }
+                    return task;
+                });
+            } catch (RuntimeException e) {
+                try {
+                    repo.release(candidate.getId(), claimToken, Instant.now());
+                } catch (RuntimeException releaseFailure) {
+                    e.addSuppressed(releaseFailure);
+                }
+                throw e;
+            }
+            events.publishEvent(TaskLifecycleEvent.of(TaskLifecycleEvent.CLAIMED, claimed));
+            return Optional.of(claimed);
         }
-        task.setStatus(TaskStatus.IN_PROGRESS);
-        task.setLastError(null);
-        return Optional.of(repo.save(task));
+        // Every attempt lost to another worker; the caller polls again.
+        return Optional.empty();
     }
 
     private AutomationTaskEntity ensureTaskHasAnycardSerialNumber(AutomationTaskEntity task) {
@@ -127,17 +191,44 @@ public class TaskService {
         return task;
     }
 
-    @Transactional
+    /** Runs under the task lock (see {@link TaskLocks}) so a background artifact decode cannot interleave. */
     public AutomationTaskEntity complete(String id, TaskDtos.CompleteTaskRequest req) {
-        AutomationTaskEntity task = getOrThrow(id);
-        task.setStatus(TaskStatus.SUCCEEDED);
-        task.setResultJson(writeJson(req.result));
-        task.setLastError(null);
-        if (task.getType() == TaskType.GETMYBONUS_ANYCARD) {
-            anycardService.upsertFromTaskResult(req.result);
-            markRedeemedAnycard(task, req.result);
+        return locks.withLock(id, () -> tx.execute(s -> {
+            AutomationTaskEntity task = getOrThrow(id);
+            checkClaim(task, req.claimToken);
+            task.setStatus(TaskStatus.SUCCEEDED);
+            task.setResultJson(writeJson(keepArtifactBarcodes(task, req.result)));
+            task.setLastError(null);
+            if (task.getType() == TaskType.GETMYBONUS_ANYCARD) {
+                anycardService.upsertFromTaskResult(req.result);
+                markRedeemedAnycard(task, req.result);
+            }
+            task = repo.save(task);
+            events.publishEvent(TaskLifecycleEvent.of(TaskLifecycleEvent.COMPLETED, task));
+            return task;
+        }));
+    }
+
+    /** A worker that sends its claimToken may only finish the task it still holds. */
+    private void checkClaim(AutomationTaskEntity task, String claimToken) {
+        if (claimToken == null || claimToken.isBlank()) return;
+        if (!claimToken.equals(task.getClaimToken())) {
+            throw new IllegalArgumentException("Task " + task.getId() + " is not held by this claimToken");
         }
-        return repo.save(task);
+    }
+
+    /**
+     * Carries barcodes decoded from the task's artifacts (merged into the stored result by
+     * {@link TaskArtifactDecodeService}) over into a result the automation posts, unless it sets them itself.
+     */
+    private JsonNode keepArtifactBarcodes(AutomationTaskEntity task, JsonNode result) {
+        if (result == null || !result.isObject() || result.has(TaskArtifactDecodeService.RESULT_KEY)) return result;
+        JsonNode previous = readJsonOrNull(task.getResultJson());
+        JsonNode barcodes = previous == null ? null : previous.get(TaskArtifactDecodeService.RESULT_KEY);
+        if (barcodes == null || barcodes.isNull()) return result;
+        ObjectNode merged = ((ObjectNode) result).deepCopy();
+        merged.set(TaskArtifactDecodeService.RESULT_KEY, barcodes);
+        return merged;
     }
 
     private void markRedeemedAnycard(AutomationTaskEntity task, JsonNode result) {
@@ -203,6 +294,8 @@ public class TaskService {
             if (a.getAnycardType() != null) data.put("anycardType", a.getAnycardType().getCode());
             t.setDataJson(writeJson(data));
             repo.save(t);
+            events.publishEvent(new TaskReadyEvent(TaskType.GETMYBONUS_ANYCARD));
+            events.publishEvent(TaskLifecycleEvent.of(TaskLifecycleEvent.CREATED, t));
         }
     }
 
@@ -217,15 +310,20 @@ public class TaskService {
         return null;
     }
 
-    @Transactional
+    /** Runs under the task lock, like {@link #complete}. */
     public AutomationTaskEntity fail(String id, TaskDtos.FailTaskRequest req) {
-        AutomationTaskEntity task = getOrThrow(id);
-        task.setStatus(TaskStatus.FAILED);
-        task.setLastError(req.error);
-        if (req.result != null) {
-            task.setResultJson(writeJson(req.result));
-        }
-        return repo.save(task);
+        return locks.withLock(id, () -> tx.execute(s -> {
+            AutomationTaskEntity task = getOrThrow(id);
+            checkClaim(task, req.claimToken);
+            task.setStatus(TaskStatus.FAILED);
+            task.setLastError(req.error);
+            if (req.result != null) {
+                task.setResultJson(writeJson(keepArtifactBarcodes(task, req.result)));
+            }
+            task = repo.save(task);
+            events.publishEvent(TaskLifecycleEvent.of(TaskLifecycleEvent.FAILED, task));
+            return task;
+        }));
     }
 
     @Transactional
@@ -243,6 +341,7 @@ public class TaskService {
         }
 
         repo.delete(task);
+        events.publishEvent(TaskLifecycleEvent.of(TaskLifecycleEvent.DELETED, task));
     }
 
     public JsonNode readJsonOrNull(String json) {
@@ -274,6 +373,8 @@ public class TaskService {
         artifact.setFilename(safeName);
         artifact.setContentType(file.getContentType());
         artifact.setSizeBytes(file.getSize());
+        boolean decode = artifactDecoder.accepts(file.getContentType(), safeName);
+        if (decode) artifact.setBarcodeStatus(TaskArtifactDecodeService.QUEUED);
 
         try {
             Files.createDirectories(artifactsDir.resolve(task.getId()));
@@ -298,10 +399,12 @@ public class TaskService {
 
             artifact.setSha256(toHex(sha256.digest()));
             artifact.setStoragePath(storedPath.toAbsolutePath().toString());
-            return artifactRepo.save(artifact);
+            artifact = artifactRepo.save(artifact);
         } catch (Exception ex) {
             throw new IllegalStateException("Failed to store artifact", ex);
         }
+        // Queued only after the row is saved, so the worker always finds it; the upload never waits on the decode.
+        return decode ? artifactDecoder.submit(artifact) : artifact;
     }
 
     public List<AutomationTaskArtifactEntity> listArtifacts(String taskId) {
@@ -316,7 +419,7 @@ public class TaskService {
     private String sanitizeFilename(String name) {
         String s = name.trim();
         if (s.isBlank()) return "artifact";
-        s = s.replaceAll("[\\\\/\\r\\n\\t\\0]", "_");
+        s = s.replaceAll("[\\\\/\\r\\n\\t\\x00]", "_");
         s = s.replaceAll("[^a-zA-Z0-9._ -]", "_");
         if (s.length() > 180) s = s.substring(0, 180);
         return s;
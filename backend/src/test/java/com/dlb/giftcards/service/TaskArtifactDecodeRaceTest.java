@@ -0,0 +1,118 @@
+package com.dlb.giftcards.service;
+
+import com.dlb.giftcards.dto.BarcodeDtos;
+import com.dlb.giftcards.dto.TaskDtos;
+import com.dlb.giftcards.entity.AutomationTaskArtifactEntity;
+import com.dlb.giftcards.entity.AutomationTaskEntity;
+import com.dlb.giftcards.entity.TaskStatus;
+import com.dlb.giftcards.entity.TaskType;
+import com.dlb.giftcards.repository.AutomationTaskArtifactRepository;
+import com.dlb.giftcards.repository.AutomationTaskRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.when;
+
+/**
+ * A worker completing a task while the background decode of its artifact merges into the same result: whichever
+ * commits first, the stored result keeps both the worker's fields and the decoded barcode.
+ */
+@SpringBootTest
+class TaskArtifactDecodeRaceTest {
+
+    private static final int ROUNDS = 20;
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) throws IOException {
+        Path dir = Files.createTempDirectory("artifact-race-test");
+        registry.add("DB_PATH", () -> dir.resolve("app.db").toString());
+        registry.add("APP_ARTIFACTS_DIR", () -> dir.resolve("artifacts").toString());
+        registry.add("APP_TASK_ARTIFACT_DECODE_ENABLED", () -> "true");
+    }
+
+    @Autowired
+    private TaskService tasks;
+
+    @Autowired
+    private AutomationTaskRepository repo;
+
+    @Autowired
+    private AutomationTaskArtifactRepository artifactRepo;
+
+    @Autowired
+    private ObjectMapper om;
+
+    @MockBean
+    private BarcodeDecodeService decodeService;
+
+    @Test
+    void completeAndArtifactDecodeKeepEachOthersWrites() throws Exception {
+        // The decode returns at the same moment the test thread calls complete, so both read the old result.
+        CyclicBarrier go = new CyclicBarrier(2);
+        when(decodeService.decodeCode128(any(byte[].class), anyBoolean(), any())).thenAnswer(inv -> {
+            go.await(10, TimeUnit.SECONDS);
+            BarcodeDtos.DecodeBarcodeResponse r = new BarcodeDtos.DecodeBarcodeResponse();
+            r.rawText = "7777123456";
+            r.serialNumber = "7777123456";
+            return r;
+        });
+
+        for (int round = 0; round < ROUNDS; round++) {
+            AutomationTaskEntity task = new AutomationTaskEntity();
+            task.setType(TaskType.GETMYBONUS_ANYCARD);
+            task.setStatus(TaskStatus.IN_PROGRESS);
+            task.setResultJson("{\"progress\":\"uploaded\"}");
+            task = repo.save(task);
+
+            AutomationTaskArtifactEntity artifact = tasks.storeArtifact(task.getId(),
+                    new MockMultipartFile("file", "card.png", "image/png", new byte[]{1, 2, 3}));
+            assertThat(artifact.getBarcodeStatus()).isEqualTo(TaskArtifactDecodeService.QUEUED);
+
+            TaskDtos.CompleteTaskRequest req = new TaskDtos.CompleteTaskRequest();
+            ObjectNode result = om.createObjectNode();
+            result.put("card_number", "6000" + round);
+            result.put("card_type", "Celebrate");
+            result.put("balance", "25.00");
+            req.result = result;
+
+            go.await(10, TimeUnit.SECONDS);
+            tasks.complete(task.getId(), req);
+            awaitDecoded(artifact.getId());
+
+            AutomationTaskEntity stored = repo.findById(task.getId()).orElseThrow();
+            assertThat(stored.getStatus()).isEqualTo(TaskStatus.SUCCEEDED);
+            JsonNode saved = om.readTree(stored.getResultJson());
+            assertThat(saved.path("card_number").asText()).isEqualTo("6000" + round);
+            assertThat(saved.path("balance").asText()).isEqualTo("25.00");
+            assertThat(saved.path(TaskArtifactDecodeService.RESULT_KEY).path(artifact.getId()).path("serialNumber").asText())
+                    .isEqualTo("7777123456");
+        }
+    }
+
+    private void awaitDecoded(String artifactId) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            String status = artifactRepo.findById(artifactId).orElseThrow().getBarcodeStatus();
+            if (TaskArtifactDecodeService.DECODED.equals(status)) return;
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Artifact " + artifactId + " was not decoded in time");
+    }
+}
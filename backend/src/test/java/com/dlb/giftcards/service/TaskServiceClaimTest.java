@@ -0,0 +1,139 @@
+package com.dlb.giftcards.service;
+
+import com.dlb.giftcards.entity.AutomationTaskEntity;
+import com.dlb.giftcards.entity.TaskStatus;
+import com.dlb.giftcards.entity.TaskType;
+import com.dlb.giftcards.repository.AutomationTaskRepository;
+import com.dlb.giftcards.repository.GiftCardAnycardRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+
+/**
+ * Claiming through {@link TaskService#next} against a real SQLite file: concurrent workers never share a task
+ * or lose one, and a claim whose enrichment fails goes back to READY.
+ */
+@SpringBootTest
+class TaskServiceClaimTest {
+
+    private static final int TASKS = 60;
+    private static final int WORKERS = 40;
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) throws IOException {
+        Path dir = Files.createTempDirectory("task-claim-test");
+        registry.add("DB_PATH", () -> dir.resolve("app.db").toString());
+        registry.add("APP_ARTIFACTS_DIR", () -> dir.resolve("artifacts").toString());
+    }
+
+    @Autowired
+    private TaskService tasks;
+
+    @Autowired
+    private AutomationTaskRepository repo;
+
+    @SpyBean
+    private GiftCardAnycardRepository anycardRepo;
+
+    @BeforeEach
+    void clean() {
+        repo.deleteAllInBatch();
+    }
+
+    @Test
+    void concurrentWorkersClaimEachTaskExactlyOnce() throws Exception {
+        for (int i = 0; i < TASKS; i++) seed("{}");
+
+        Map<String, String> claimedBy = new ConcurrentHashMap<>();
+        List<String> duplicates = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(WORKERS);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int w = 0; w < WORKERS; w++) {
+                String worker = "worker-" + w;
+                workers.add(pool.submit(() -> {
+                    start.await();
+                    // next() gives up after a run of lost races, so keep polling while READY tasks remain.
+                    while (true) {
+                        Optional<AutomationTaskEntity> task = tasks.next(TaskType.GETMYBONUS_ANYCARD.getCode(), worker);
+                        if (task.isPresent()) {
+                            String previous = claimedBy.putIfAbsent(task.get().getId(), worker);
+                            if (previous != null) {
+                                synchronized (duplicates) {
+                                    duplicates.add(task.get().getId());
+                                }
+                            }
+                        } else if (repo.findFirstByStatusAndTypeOrderByCreatedAtAsc(TaskStatus.READY, TaskType.GETMYBONUS_ANYCARD).isEmpty()) {
+                            return null;
+                        }
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<?> f : workers) f.get(2, TimeUnit.MINUTES);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(duplicates).isEmpty();
+        assertThat(claimedBy).hasSize(TASKS);
+
+        Map<String, AutomationTaskEntity> stored = new HashMap<>();
+        for (AutomationTaskEntity t : repo.findAll()) stored.put(t.getId(), t);
+        assertThat(stored.keySet()).isEqualTo(claimedBy.keySet());
+        for (AutomationTaskEntity t : stored.values()) {
+            assertThat(t.getStatus()).isEqualTo(TaskStatus.IN_PROGRESS);
+            assertThat(t.getWorkerId()).isEqualTo(claimedBy.get(t.getId()));
+            assertThat(t.getClaimToken()).isNotNull();
+        }
+        assertThat(stored.values().stream().map(AutomationTaskEntity::getClaimToken).distinct()).hasSize(TASKS);
+    }
+
+    @Test
+    void failedEnrichmentReleasesTheClaim() {
+        AutomationTaskEntity task = seed("{\"anycardId\":\"missing\"}");
+        doThrow(new IllegalStateException("lookup failed")).when(anycardRepo).findById(anyString());
+
+        assertThatThrownBy(() -> tasks.next(TaskType.GETMYBONUS_ANYCARD.getCode(), "worker"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("lookup failed");
+
+        AutomationTaskEntity after = repo.findById(task.getId()).orElseThrow();
+        assertThat(after.getStatus()).isEqualTo(TaskStatus.READY);
+        assertThat(after.getClaimToken()).isNull();
+        assertThat(after.getWorkerId()).isNull();
+    }
+
+    private AutomationTaskEntity seed(String dataJson) {
+        AutomationTaskEntity e = new AutomationTaskEntity();
+        e.setType(TaskType.GETMYBONUS_ANYCARD);
+        e.setStatus(TaskStatus.READY);
+        e.setDataJson(dataJson);
+        return repo.save(e);
+    }
+}